@@ -0,0 +1,61 @@
+package com.brettonw.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// the exact hierarchy for every linkage (single linkage goes through the spanning tree, the rest
+// through the distance matrix), and the approximate hierarchy at a size the exact one can't reach
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 2, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (1)
+public class Benchmark_AgglomeratedHierarchy {
+    @Param ({ Generators.BLOBS, Generators.SKEWED })
+    public String distribution;
+
+    @Param ({ "1000", "4000" })
+    public int n;
+
+    @Param ({ "2" })
+    public int k;
+
+    // USE_MIN_DISTANCE through USE_WARD_DISTANCE
+    @Param ({ "0", "1", "2", "3", "4" })
+    public int linkage;
+
+    private DataSet dataSet;
+    private DataSet large;
+
+    @Setup
+    public void setup () {
+        dataSet = new DataSet (Generators.generate (distribution, n, k));
+        large = new DataSet (Generators.generate (distribution, n * 100, k));
+    }
+
+    @Benchmark
+    public AgglomeratedHierarchy agglomeratedHierarchy () {
+        return new AgglomeratedHierarchy (dataSet).setLinkage (linkage).fit ();
+    }
+
+    @Benchmark
+    public ApproximateHierarchy approximateHierarchy () {
+        return new ApproximateHierarchy (large)
+                .setLinkage (linkage)
+                .setRepresentation (ApproximateHierarchy.REPRESENT_BY_SAMPLE, n)
+                .setSeed (Generators.SEED)
+                .fit ();
+    }
+}
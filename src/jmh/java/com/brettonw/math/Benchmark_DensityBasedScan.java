@@ -0,0 +1,48 @@
+package com.brettonw.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// a full density based scan over the grid index, with a fresh solver every time so no cached
+// neighborhoods carry over between invocations
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 2, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (1)
+public class Benchmark_DensityBasedScan {
+    @Param ({ Generators.UNIFORM, Generators.BLOBS, Generators.SKEWED })
+    public String distribution;
+
+    @Param ({ "10000", "100000" })
+    public int n;
+
+    @Param ({ "2" })
+    public int k;
+
+    private SpatiallyIndexed dataSet;
+    private double range;
+
+    @Setup
+    public void setup () {
+        dataSet = new SpatiallyIndexed (Generators.generate (distribution, n, k));
+        range = Generators.typicalRange (n, k);
+    }
+
+    @Benchmark
+    public DensityBasedScan fit () {
+        return new DensityBasedScan (dataSet).setRange (range).setMinPts (4).fit ();
+    }
+}
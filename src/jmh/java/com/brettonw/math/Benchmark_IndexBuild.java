@@ -0,0 +1,58 @@
+package com.brettonw.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// building the spatial indices from scratch. the grid index sorts its tuple array in place, so every
+// build gets a fresh copy of the (unsorted) array, and the copy is part of the measurement
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class Benchmark_IndexBuild {
+    @Param ({ Generators.UNIFORM, Generators.SKEWED })
+    public String distribution;
+
+    @Param ({ "10000", "100000", "1000000" })
+    public int n;
+
+    @Param ({ "2", "3" })
+    public int k;
+
+    private Tuple[] tuples;
+    private DataSet dataSet;
+
+    @Setup
+    public void setup () {
+        tuples = Generators.generate (distribution, n, k);
+        dataSet = new DataSet (tuples.clone ());
+    }
+
+    @Benchmark
+    public DataSet dataSet () {
+        return new DataSet (tuples.clone ());
+    }
+
+    @Benchmark
+    public SpatiallyIndexed spatiallyIndexed () {
+        return new SpatiallyIndexed (tuples.clone ());
+    }
+
+    @Benchmark
+    public KdTree kdTree () {
+        return new KdTree (dataSet);
+    }
+}
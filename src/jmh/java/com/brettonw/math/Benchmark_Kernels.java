@@ -0,0 +1,71 @@
+package com.brettonw.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// the inner loops everything else is built on: tuple distances, nearest centroid assignment, and
+// the tiled pairwise distance matrix
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class Benchmark_Kernels {
+    private static final int TUPLE_COUNT = 1024;
+
+    @Param ({ "2", "16", "128" })
+    public int k;
+
+    private Tuple[] tuples;
+    private Codebook codebook;
+    private DataSet pairs;
+    private DistanceMatrix distances;
+    private int next;
+
+    @Setup
+    public void setup () {
+        tuples = Generators.generate (Generators.UNIFORM, TUPLE_COUNT, k);
+        codebook = new Codebook (Generators.generate (Generators.BLOBS, 64, k));
+        pairs = new DataSet (Generators.generate (Generators.UNIFORM, 512, k));
+        distances = DistanceMatrix.onHeap (pairs.getN (), false);
+        next = 0;
+    }
+
+    private Tuple nextTuple () {
+        next = (next + 1) & (TUPLE_COUNT - 1);
+        return tuples[next];
+    }
+
+    @Benchmark
+    public double deltaNormSq () {
+        return Tuple.deltaNormSq (nextTuple (), tuples[0]);
+    }
+
+    @Benchmark
+    public double norm () {
+        return Tuple.norm (nextTuple ());
+    }
+
+    @Benchmark
+    public int codebookAssign () {
+        return codebook.assign (nextTuple ());
+    }
+
+    @Benchmark
+    @OutputTimeUnit (TimeUnit.MICROSECONDS)
+    public DistanceMatrix computeDistances () {
+        return distances.computeDistances (pairs);
+    }
+}
@@ -0,0 +1,71 @@
+package com.brettonw.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// a range query on the plain data set (a linear scan) against the grid index, and a nearest
+// neighbor query on the kd-tree, all with the queries centered on points of the data
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class Benchmark_RangeSearch {
+    @Param ({ Generators.UNIFORM, Generators.BLOBS, Generators.SKEWED })
+    public String distribution;
+
+    @Param ({ "10000", "100000" })
+    public int n;
+
+    @Param ({ "2", "3" })
+    public int k;
+
+    private DataSet dataSet;
+    private SpatiallyIndexed spatiallyIndexed;
+    private KdTree kdTree;
+    private double range;
+    private int next;
+
+    @Setup
+    public void setup () {
+        Tuple[] tuples = Generators.generate (distribution, n, k);
+        dataSet = new DataSet (tuples.clone ());
+        spatiallyIndexed = new SpatiallyIndexed (tuples.clone ());
+        kdTree = new KdTree (dataSet);
+        range = Generators.typicalRange (n, k);
+        next = 0;
+    }
+
+    private Tuple nextLocus () {
+        // step through the data with a stride that is coprime to n, so the queries jump around
+        next = (next + 7919) % n;
+        return dataSet.get (next);
+    }
+
+    @Benchmark
+    public int[] dataSetRangeSearch () {
+        return dataSet.rangeSearch (nextLocus (), range);
+    }
+
+    @Benchmark
+    public int[] spatiallyIndexedRangeSearch () {
+        return spatiallyIndexed.rangeSearch (nextLocus (), range);
+    }
+
+    @Benchmark
+    public int kdTreeNearest () {
+        return kdTree.nearest (nextLocus ());
+    }
+}
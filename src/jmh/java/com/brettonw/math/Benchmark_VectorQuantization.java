@@ -0,0 +1,67 @@
+package com.brettonw.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// k-means to convergence, and mini-batch k-means, both started from the same seeded pick of
+// initial centroids so that lloyd's iterations do the same work in every invocation. the batches
+// are drawn from the same seed too
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 2, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (1)
+public class Benchmark_VectorQuantization {
+    @Param ({ Generators.BLOBS, Generators.SKEWED })
+    public String distribution;
+
+    @Param ({ "10000", "100000" })
+    public int n;
+
+    @Param ({ "2", "16" })
+    public int k;
+
+    @Param ({ "8", "64" })
+    public int c;
+
+    private DataSet dataSet;
+    private Tuple[] initialCentroids;
+
+    @Setup
+    public void setup () {
+        dataSet = new DataSet (Generators.generate (distribution, n, k));
+        Random random = new Random (Generators.SEED);
+        initialCentroids = new Tuple[c];
+        for (int i = 0; i < c; ++i) {
+            initialCentroids[i] = dataSet.get (random.nextInt (n));
+        }
+    }
+
+    @Benchmark
+    public VectorQuantization vectorQuantization () {
+        return new VectorQuantization (dataSet).setCentroids (initialCentroids.clone ()).fit ();
+    }
+
+    @Benchmark
+    public MiniBatchVectorQuantization miniBatchVectorQuantization () {
+        return new MiniBatchVectorQuantization (dataSet)
+                .setCentroids (initialCentroids.clone ())
+                .setBatchSize (1000)
+                .setIterations (100)
+                .setSeed (Generators.SEED)
+                .fit ();
+    }
+}
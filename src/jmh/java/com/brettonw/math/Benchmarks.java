@@ -0,0 +1,20 @@
+package com.brettonw.math;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// the entry point of target/benchmarks.jar, it takes the usual jmh command line (e.g. a regex to
+// pick benchmarks, or -p n=100000 to override a parameter) and always adds the gc profiler, so every
+// result comes with its allocation rate and bytes allocated per operation
+public class Benchmarks {
+    public static void main (String[] args) throws Exception {
+        Options options = new OptionsBuilder ()
+                .parent (new CommandLineOptions (args))
+                .addProfiler (GCProfiler.class)
+                .build ();
+        new Runner (options).run ();
+    }
+}
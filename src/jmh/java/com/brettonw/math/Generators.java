@@ -0,0 +1,108 @@
+package com.brettonw.math;
+
+import java.util.Random;
+
+// seeded synthetic data for the benchmarks, so every run (and every machine) measures the same
+// points. the distributions stress different parts of the engines:
+//   uniform - evenly spread, every grid cell and kd-tree node has about the same occupancy
+//   blobs   - well separated gaussian clusters of equal size, the easy case for all of the engines
+//   skewed  - clusters with sizes and spreads that fall off as a power law, so a few dense cells
+//             hold most of the points and many cells are nearly empty
+public class Generators {
+    public static final String UNIFORM = "uniform";
+    public static final String BLOBS = "blobs";
+    public static final String SKEWED = "skewed";
+
+    public static final long SEED = 0x5eedc0de2025L;
+
+    // all of the distributions fill roughly the unit cube scaled by this
+    private static final double SCALE = 100.0;
+    private static final int CLUSTER_COUNT = 8;
+
+    public static Tuple[] uniform (int n, int k, long seed) {
+        Random random = new Random (seed);
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            double[] values = new double[k];
+            for (int j = 0; j < k; ++j) {
+                values[j] = random.nextDouble () * SCALE;
+            }
+            tuples[i] = new Tuple (values);
+        }
+        return tuples;
+    }
+
+    private static double[][] centers (Random random, int k) {
+        double[][] centers = new double[CLUSTER_COUNT][k];
+        for (int c = 0; c < CLUSTER_COUNT; ++c) {
+            for (int j = 0; j < k; ++j) {
+                centers[c][j] = (0.1 + (0.8 * random.nextDouble ())) * SCALE;
+            }
+        }
+        return centers;
+    }
+
+    public static Tuple[] blobs (int n, int k, long seed) {
+        Random random = new Random (seed);
+        double[][] centers = centers (random, k);
+        double sigma = SCALE * 0.02;
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            double[] center = centers[random.nextInt (CLUSTER_COUNT)];
+            double[] values = new double[k];
+            for (int j = 0; j < k; ++j) {
+                values[j] = center[j] + (random.nextGaussian () * sigma);
+            }
+            tuples[i] = new Tuple (values);
+        }
+        return tuples;
+    }
+
+    public static Tuple[] skewed (int n, int k, long seed) {
+        Random random = new Random (seed);
+        double[][] centers = centers (random, k);
+
+        // cluster c gets weight 1 / (c + 1)^2, and a spread that grows with its index
+        double[] cumulative = new double[CLUSTER_COUNT];
+        double total = 0;
+        for (int c = 0; c < CLUSTER_COUNT; ++c) {
+            total += 1.0 / ((c + 1) * (c + 1));
+            cumulative[c] = total;
+        }
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            double pick = random.nextDouble () * total;
+            int c = 0;
+            while ((c < (CLUSTER_COUNT - 1)) && (cumulative[c] < pick)) {
+                ++c;
+            }
+            double sigma = SCALE * 0.002 * (c + 1) * (c + 1);
+            double[] values = new double[k];
+            for (int j = 0; j < k; ++j) {
+                values[j] = centers[c][j] + (random.nextGaussian () * sigma);
+            }
+            tuples[i] = new Tuple (values);
+        }
+        return tuples;
+    }
+
+    public static Tuple[] generate (String distribution, int n, int k, long seed) {
+        switch (distribution) {
+            case UNIFORM: return uniform (n, k, seed);
+            case BLOBS: return blobs (n, k, seed);
+            case SKEWED: return skewed (n, k, seed);
+            default: throw new IllegalArgumentException ("Unknown distribution (" + distribution + ")");
+        }
+    }
+
+    public static Tuple[] generate (String distribution, int n, int k) {
+        return generate (distribution, n, k, SEED);
+    }
+
+    // a range that catches a few dozen neighbors on average in uniform data, used for both range
+    // search and density based scan so they are comparable across n and k
+    public static double typicalRange (int n, int k) {
+        double volumePerPoint = Math.pow (SCALE, k) / n;
+        return Math.pow (32 * volumePerPoint, 1.0 / k) / 2;
+    }
+}
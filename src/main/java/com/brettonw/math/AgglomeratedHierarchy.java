@@ -3,176 +3,412 @@ package com.brettonw.math;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
 
 public class AgglomeratedHierarchy extends ClusterAlgorithm {
     private static final Logger log = LogManager.getLogger (AgglomeratedHierarchy.class);
 
-    private abstract class Cluster {
+    private class Cluster {
         private int id;
+        private int slot;
 
-        public Cluster (int id) {
+        public Cluster (int id, int slot) {
             this.id = id;
+            this.slot = slot;
         }
 
         public int getId () {
             return id;
         }
 
-        public int getPairId () {
-            return (id << 16) | id;
-        }
-
-        public int[] getSubPairIds () {
-            return new int[] { id };
+        // the row of the distance matrix this cluster's distances are stored in. every cluster
+        // starts in the slot of its sample, and a merged cluster takes over the slot of its first
+        // child, so the matrix never needs more than n rows
+        public int getSlot () {
+            return slot;
         }
 
         public Cluster[] getChildren () {
             return new Cluster[] {};
         }
 
-        public abstract int[] getSamples ();
+        public double getDistance () {
+            return 0;
+        }
+
+        // the number of samples in the cluster, or their total weight in a weighted data set
+        public double getSize () {
+            return 1;
+        }
     }
 
     private class Single extends Cluster {
-        private int sample;
-
         public Single (int sample) {
-            super(sample);
-            this.sample = sample;
+            super(sample, sample);
         }
 
         @Override
-        public int[] getSamples () {
-            return new int[] { sample };
+        public double getSize () {
+            return dataSet.getWeight (getId ());
         }
     }
 
     private class Pair extends Cluster {
         private Cluster a;
         private Cluster b;
+        private double distance;
+        private double size;
 
-        public Pair (int id, Cluster a, Cluster b) {
-            super(id);
+        public Pair (int id, Cluster a, Cluster b, double distance) {
+            super(id, Math.min (a.getSlot (), b.getSlot ()));
             this.a = a;
             this.b = b;
+            this.distance = distance;
+            size = a.getSize () + b.getSize ();
         }
 
         @Override
-        public int getPairId () {
-            return makePairId (a, b);
+        public Cluster[] getChildren () {
+            return new Cluster[] { a, b };
         }
 
         @Override
-        public int[] getSubPairIds () {
-            return new int[] { a.getPairId (), b.getPairId () };
+        public double getDistance () {
+            return distance;
         }
 
         @Override
-        public Cluster[] getChildren () {
-            return new Cluster[] { a, b };
+        public double getSize () {
+            return size;
+        }
+    }
+
+    // a cluster waiting in the heap with the distance to its nearest neighbor at the time it was
+    // queued, entries are checked against the current state when they come off the heap
+    private static class Candidate implements Comparable<Candidate> {
+        private double distance;
+        private int id;
+
+        public Candidate (double distance, int id) {
+            this.distance = distance;
+            this.id = id;
         }
 
         @Override
-        public int[] getSamples () {
-            int[] aSamples = a.getSamples ();
-            int[] bSamples = b.getSamples ();
-            int[] result = new int[aSamples.length + bSamples.length];
-            System.arraycopy (aSamples, 0, result, 0, aSamples.length);
-            System.arraycopy (bSamples, 0, result, aSamples.length, bSamples.length);
-            return result;
-        }
-
-        public double minDistance () {
-            double result = Double.MAX_VALUE;
-            int[] aSubPairIds = a.getSubPairIds ();
-            int[] bSubPairIds = b.getSubPairIds ();
-            for (int i = 0, aSubPairIdsLength = aSubPairIds.length; i < aSubPairIdsLength; ++i) {
-                int aSubPairId = aSubPairIds[i];
-                for (int j = 0, bSubPairIdsLength = bSubPairIds.length; j < bSubPairIdsLength; ++j) {
-                    int bSubPairId = bSubPairIds[j];
-                    int pairId = makePairId (aSubPairId, bSubPairId);
-                    Double distance = distances.get (pairId);
-                    if (distance != null) {
-                        result = Math.min (result, distance);
-                    }
-                }
+        public int compareTo (Candidate candidate) {
+            return Double.compare (distance, candidate.distance);
+        }
+    }
+
+    public static final int USE_MIN_DISTANCE = 0;
+    public static final int USE_MAX_DISTANCE = 1;
+    public static final int USE_MEAN_DISTANCE = 2;
+    public static final int USE_CENTROID_DISTANCE = 3;
+    public static final int USE_WARD_DISTANCE = 4;
+
+    public static final int STORE_ON_HEAP = 0;
+    public static final int STORE_OFF_HEAP = 1;
+    public static final int STORE_MAPPED = 2;
+
+    private int linkage;
+    private int storage;
+    private boolean singlePrecision;
+    private boolean cacheSampleDistances;
+    private boolean useSpanningTree;
+    private List<Cluster> clusters;
+    private DistanceMatrix distances;
+    private int nextId;
+
+    // the merges as they happen, indexed by (id - n) of the cluster they create
+    private int[] mergeA;
+    private int[] mergeB;
+    private double[] mergeDistance;
+
+    // the finished tree, and the current cut through it
+    private Dendrogram dendrogram;
+    private double[] centroidSums;  // per merged cluster k-valued (weighted) sums of its members, flattened
+    private double[] centroidWeights; // per merged cluster total weight of its members
+    private int clusterCount;
+
+    // the pairwise distances between the samples only depend on the data set, so they can be kept
+    // across fits with different linkages - at the cost of a second matrix, so only when asked for
+    private DistanceMatrix sampleDistances;
+
+    public AgglomeratedHierarchy (DataSet dataSet) {
+        super (dataSet);
+        linkage = USE_MIN_DISTANCE;
+        storage = STORE_ON_HEAP;
+        singlePrecision = false;
+        cacheSampleDistances = false;
+        useSpanningTree = true;
+    }
+
+    public AgglomeratedHierarchy (DataSet dataSet, int linkage) {
+        this (dataSet);
+        setLinkage (linkage).fit ();
+    }
+
+    public AgglomeratedHierarchy setLinkage (int linkage) {
+        this.linkage = linkage;
+        return this;
+    }
+
+    // where the distance matrix lives, and whether it is stored as floats (half the memory, with
+    // ties between nearly equal distances resolved a little differently)
+    public AgglomeratedHierarchy setDistanceStorage (int storage, boolean singlePrecision) {
+        this.storage = storage;
+        this.singlePrecision = singlePrecision;
+        sampleDistances = null;
+        return this;
+    }
+
+    // keep a copy of the sample distances for refits with other linkages, which doubles the memory
+    // of the matrix but skips recomputing it. off by default, a single fit doesn't need it
+    public AgglomeratedHierarchy setCacheSampleDistances (boolean cacheSampleDistances) {
+        this.cacheSampleDistances = cacheSampleDistances;
+        if (! cacheSampleDistances) {
+            sampleDistances = null;
+        }
+        return this;
+    }
+
+    // single linkage is built from a minimum spanning tree by default, which never needs the
+    // distance matrix. turning this off forces the matrix based engine
+    public AgglomeratedHierarchy setUseSpanningTree (boolean useSpanningTree) {
+        this.useSpanningTree = useSpanningTree;
+        return this;
+    }
+
+    private DistanceMatrix makeDistanceMatrix (int n) {
+        switch (storage) {
+            case STORE_OFF_HEAP: return DistanceMatrix.offHeap (n, singlePrecision);
+            case STORE_MAPPED: return DistanceMatrix.mapped (n, singlePrecision);
+        }
+        return DistanceMatrix.onHeap (n, singlePrecision);
+    }
+
+    @Override
+    public AgglomeratedHierarchy setDataSet (DataSet dataSet) {
+        super.setDataSet (dataSet);
+        sampleDistances = null;
+        return this;
+    }
+
+    // centroid and ward linkages are updated as squared euclidean distances, and only turned back
+    // into distances when a merge is recorded
+    private boolean isSquaredLinkage () {
+        return (linkage == USE_CENTROID_DISTANCE) || (linkage == USE_WARD_DISTANCE);
+    }
+
+    private double distance (Cluster a, Cluster b) {
+        return distances.get (a.getSlot (), b.getSlot ());
+    }
+
+    // https://en.wikipedia.org/wiki/Ward%27s_method#Lance%E2%80%93Williams_algorithms
+    // the distance from the merge of a and b to a third cluster c, computed from the distances
+    // between the three clusters and their sizes, without touching the samples at all. in a
+    // weighted data set the sizes are the total weights, so a sample that stands for many counts
+    // as many
+    private double lanceWilliams (double ac, double bc, double ab, double aSize, double bSize, double cSize) {
+        switch (linkage) {
+            case USE_MIN_DISTANCE:
+                return Math.min (ac, bc);
+            case USE_MAX_DISTANCE:
+                return Math.max (ac, bc);
+            case USE_MEAN_DISTANCE:
+                return ((aSize * ac) + (bSize * bc)) / (aSize + bSize);
+            case USE_CENTROID_DISTANCE: {
+                double abSize = aSize + bSize;
+                return (((aSize * ac) + (bSize * bc)) / abSize) - ((aSize * bSize * ab) / (abSize * abSize));
+            }
+            case USE_WARD_DISTANCE:
+                return (((aSize + cSize) * ac) + ((bSize + cSize) * bc) - (cSize * ab)) / (aSize + bSize + cSize);
+        }
+        return 0;
+    }
+
+    private Cluster makePair (Cluster a, Cluster b, double distance) {
+        int merge = nextId - dataSet.getN ();
+        mergeA[merge] = a.getId ();
+        mergeB[merge] = b.getId ();
+        mergeDistance[merge] = distance;
+        return new Pair (nextId++, a, b, distance);
+    }
+
+    // remove the two clusters, and replace them with a new, combined cluster, updating the distances
+    // from every remaining cluster to the new one
+    private Cluster merge (Cluster a, Cluster b, double distance) {
+        clusters.remove (a);
+        clusters.remove (b);
+        int aSlot = a.getSlot ();
+        int bSlot = b.getSlot ();
+        double aSize = a.getSize (), bSize = b.getSize ();
+
+        double height = isSquaredLinkage () ? Math.sqrt (distance) : distance;
+        Cluster pair = makePair (a, b, height);
+        int pairSlot = pair.getSlot ();
+        for (Cluster cluster : clusters) {
+            int slot = cluster.getSlot ();
+            double ac = distances.get (aSlot, slot);
+            double bc = distances.get (bSlot, slot);
+            distances.set (pairSlot, slot, lanceWilliams (ac, bc, distance, aSize, bSize, cluster.getSize ()));
+        }
+        clusters.add (pair);
+        return pair;
+    }
+
+    // https://en.wikipedia.org/wiki/Nearest-neighbor_chain_algorithm
+    // follow a chain of nearest neighbors from any cluster until two clusters are each other's
+    // nearest neighbor, and merge them. for a reducible linkage (min, max, mean, and ward), merging
+    // a pair of reciprocal nearest neighbors can't make the new cluster nearer to anything than its
+    // parts were, so the rest of the chain stays valid and is simply continued. every step either
+    // grows the chain or merges, so this is O(n^2) distance evaluations in total
+    private void nearestNeighborChain () {
+        List<Cluster> chain = new ArrayList<> ();
+        while (clusters.size () > 1) {
+            if (chain.isEmpty ()) {
+                chain.add (clusters.get (0));
             }
-            return result;
-        }
-
-        public double maxDistance () {
-            double result = 0.0;
-
-            int[] aSubPairIds = a.getSubPairIds ();
-            int[] bSubPairIds = b.getSubPairIds ();
-            for (int i = 0, aSubPairIdsLength = aSubPairIds.length; i < aSubPairIdsLength; ++i) {
-                int aSubPairId = aSubPairIds[i];
-                for (int j = 0, bSubPairIdsLength = bSubPairIds.length; j < bSubPairIdsLength; ++j) {
-                    int bSubPairId = bSubPairIds[j];
-                    int pairId = makePairId (aSubPairId, bSubPairId);
-                    Double distance = distances.get (pairId);
-                    if (distance != null) {
-                        result = Math.max (result, distance);
+            int chainSize = chain.size ();
+            Cluster top = chain.get (chainSize - 1);
+
+            // find the nearest neighbor of the top of the chain, ties are resolved in favor of the
+            // previous chain element so the chain can't cycle
+            Cluster previous = (chainSize > 1) ? chain.get (chainSize - 2) : null;
+            Cluster nearest = previous;
+            double nearestDistance = (previous != null) ? distance (top, previous) : Double.MAX_VALUE;
+            for (Cluster cluster : clusters) {
+                if (cluster != top) {
+                    double distance = distance (top, cluster);
+                    if (distance < nearestDistance) {
+                        nearestDistance = distance;
+                        nearest = cluster;
                     }
                 }
             }
-            return result;
-        }
-
-        public double meanDistance () {
-            double result = 0.0;
-            int[] aSamples = a.getSamples ();
-            int[] bSamples = b.getSamples ();
-            for (int i = 0, aSamplesLength = aSamples.length; i < aSamplesLength; ++i) {
-                int aSample = aSamples[i];
-                for (int j = 0, bSamplesLength = bSamples.length; j < bSamplesLength; ++j) {
-                    int bSample = bSamples[j];
-                    // at this level, the cluster ids are the same as the index in the distances
-                    int pairId = makePairId (aSample, bSample);
-                    Double distance = distances.get (pairId);
-                    result += distance;
-                }
+
+            if (nearest == previous) {
+                chain.remove (chainSize - 1);
+                chain.remove (chainSize - 2);
+                merge (previous, top, nearestDistance);
+            } else {
+                chain.add (nearest);
             }
-            return result / (aSamples.length + bSamples.length);
         }
+    }
 
-        public double centroidDistance () {
-            int[] aSamples = a.getSamples ();
-            Tuple[] aTuples = dataSet.getTuples (aSamples);
-            Tuple aCentroid = Tuple.average (aTuples);
+    // centroid linkage isn't reducible - a merged cluster can be closer to a third cluster than
+    // either of its parts - so the chain can't be used. instead, each cluster caches its nearest
+    // neighbor, and a heap orders the clusters by that distance. distances between two surviving
+    // clusters never change, so a cached neighbor only goes bad when it gets merged away, and that
+    // is detected (and fixed) lazily when the cluster comes off the heap
+    private void nearestNeighborHeap () {
+        int n = clusters.size ();
+        Cluster[] byId = new Cluster[(2 * n) - 1];
+        Cluster[] nearest = new Cluster[(2 * n) - 1];
+        double[] nearestDistance = new double[(2 * n) - 1];
+        PriorityQueue<Candidate> heap = new PriorityQueue<> (n);
+        for (Cluster cluster : clusters) {
+            byId[cluster.getId ()] = cluster;
+            findNearest (cluster, nearest, nearestDistance);
+            heap.add (new Candidate (nearestDistance[cluster.getId ()], cluster.getId ()));
+        }
 
-            int[] bSamples = b.getSamples ();
-            Tuple[] bTuples = dataSet.getTuples (bSamples);
-            Tuple bCentroid = Tuple.average (bTuples);
+        while (clusters.size () > 1) {
+            // skip entries for clusters that have been merged away, or that were re-queued since
+            Candidate candidate = heap.poll ();
+            Cluster cluster = byId[candidate.id];
+            if ((cluster == null) || (candidate.distance != nearestDistance[candidate.id])) {
+                continue;
+            }
 
-            return Tuple.deltaNorm (aCentroid, bCentroid);
+            // if the neighbor is gone, the real nearest distance can only be larger than the
+            // queued one, so recompute it and put the cluster back
+            Cluster neighbor = nearest[candidate.id];
+            if (byId[neighbor.getId ()] == null) {
+                findNearest (cluster, nearest, nearestDistance);
+                heap.add (new Candidate (nearestDistance[candidate.id], candidate.id));
+                continue;
+            }
+
+            // merge the pair, and let every other cluster see if the new one is its nearest
+            byId[cluster.getId ()] = null;
+            byId[neighbor.getId ()] = null;
+            Cluster pair = merge (cluster, neighbor, candidate.distance);
+            int pairId = pair.getId ();
+            byId[pairId] = pair;
+            nearestDistance[pairId] = Double.MAX_VALUE;
+            for (Cluster other : clusters) {
+                if (other != pair) {
+                    int otherId = other.getId ();
+                    double distance = distance (pair, other);
+                    if (distance < nearestDistance[pairId]) {
+                        nearestDistance[pairId] = distance;
+                        nearest[pairId] = other;
+                    }
+                    if (distance < nearestDistance[otherId]) {
+                        nearestDistance[otherId] = distance;
+                        nearest[otherId] = pair;
+                        heap.add (new Candidate (distance, otherId));
+                    }
+                }
+            }
+            if (clusters.size () > 1) {
+                heap.add (new Candidate (nearestDistance[pairId], pairId));
+            }
         }
     }
 
-    public static final int USE_MIN_DISTANCE = 0;
-    public static final int USE_MAX_DISTANCE = 1;
-    public static final int USE_MEAN_DISTANCE = 2;
-    public static final int USE_CENTROID_DISTANCE = 3;
-
-    private List<Cluster> clusters;
-    private Map<Integer, Double> distances;
-
-    public static int makePairId (Cluster a, Cluster b) {
-        return makePairId (a.getId (), b.getId ());
+    private void findNearest (Cluster cluster, Cluster[] nearest, double[] nearestDistance) {
+        int id = cluster.getId ();
+        nearestDistance[id] = Double.MAX_VALUE;
+        for (Cluster other : clusters) {
+            if (other != cluster) {
+                double distance = distance (cluster, other);
+                if (distance < nearestDistance[id]) {
+                    nearestDistance[id] = distance;
+                    nearest[id] = other;
+                }
+            }
+        }
     }
 
-    public static int makePairId (int aId, int bId) {
-        return (aId << 16) | bId;
+    // single linkage merges clusters in exactly the order kruskal's algorithm adds the edges of the
+    // minimum spanning tree, so walk the sorted edges with a union-find and merge whatever
+    // clusters the two ends of each edge currently belong to
+    private void spanningTree () {
+        MinimumSpanningTree spanningTree = new MinimumSpanningTree (dataSet);
+        int n = dataSet.getN ();
+        int[] parent = new int[n];
+        Cluster[] clusterOf = new Cluster[n];
+        for (int i = 0; i < n; ++i) {
+            parent[i] = i;
+            clusterOf[i] = clusters.get (i);
+        }
+        Cluster root = null;
+        for (int i = 0, end = spanningTree.getEdgeCount (); i < end; ++i) {
+            int a = spanningTree.getEdgeA (i);
+            while (parent[a] != a) {
+                a = parent[a] = parent[parent[a]];
+            }
+            int b = spanningTree.getEdgeB (i);
+            while (parent[b] != b) {
+                b = parent[b] = parent[parent[b]];
+            }
+            root = makePair (clusterOf[a], clusterOf[b], spanningTree.getEdgeDistance (i));
+            parent[a] = b;
+            clusterOf[b] = root;
+        }
+        clusters.clear ();
+        clusters.add (root);
     }
 
-    public AgglomeratedHierarchy (DataSet dataSet, int linkage) {
-        super (dataSet);
+    @Override
+    public AgglomeratedHierarchy fit () {
         int n = dataSet.getN ();
-        distances = new HashMap<> (n * 2);
 
         // create a list of all clusters, this will start out as size n, but will then be trimmed
         // down to just a single entry by the time we are finished
@@ -181,88 +417,175 @@ public class AgglomeratedHierarchy extends ClusterAlgorithm {
         for (int i = 0; i < n; ++i) {
             clusters.add (new Single (i));
         }
+        nextId = n;
+        int mergeCount = Math.max (0, n - 1);
+        mergeA = new int[mergeCount];
+        mergeB = new int[mergeCount];
+        mergeDistance = new double[mergeCount];
+        if ((n > 1) && (linkage == USE_MIN_DISTANCE) && useSpanningTree) {
+            long start = (listener != null) ? System.nanoTime () : 0;
+            spanningTree ();
+            if (listener != null) {
+                listener.phase (this, "spanning tree", System.nanoTime () - start);
+            }
+        } else {
+            mergeWithDistanceMatrix ();
+        }
 
-        // pre-cache the pairwise cluster distances -  - yes, this is n^2
-        log.info ("Pre-computing distances for " + ((n - 1) * (n - 1)) + " pairs");
-        for (int i = 0, end = n - 1; i < end; ++i) {
-            Cluster iCluster = clusters.get (i);
-            Tuple iTuple = dataSet.get (iCluster.getSamples ()[0]);
-            for (int j = i + 1; j < n; ++j) {
-                Cluster jCluster = clusters.get (j);
-                Tuple jTuple = dataSet.get (jCluster.getSamples ()[0]);
-                int pairId = makePairId (iCluster, jCluster);
-                distances.put (pairId, Tuple.deltaNorm (iTuple, jTuple));
+        // the spanning tree comes out sorted already, the chain needs sorting, and centroid
+        // linkage isn't monotonic so its merges stay in the order they happened
+        long start = (listener != null) ? System.nanoTime () : 0;
+        dendrogram = new Dendrogram (n, mergeA, mergeB, mergeDistance, linkage != USE_CENTROID_DISTANCE);
+        if (listener != null) {
+            listener.phase (this, "dendrogram", System.nanoTime () - start);
+        }
+        mergeA = mergeB = null;
+        mergeDistance = null;
+        log.info ("Finished");
+        return setDendrogram (dendrogram);
+    }
+
+    // restore the result of an earlier fit (e.g. from a snapshot) over the same data set, instead
+    // of fitting again
+    public AgglomeratedHierarchy setDendrogram (Dendrogram dendrogram) {
+        this.dendrogram = dendrogram;
+        computeCentroidSums ();
+        return cutAtCount (dataSet.getN ());
+    }
+
+    private void mergeWithDistanceMatrix () {
+        int n = dataSet.getN ();
+
+        // pre-cache the pairwise cluster distances -  - yes, this is n^2, but it's spread over
+        // all the cores
+        long start = (listener != null) ? System.nanoTime () : 0;
+        distances = makeDistanceMatrix (n);
+        if (sampleDistances == null) {
+            log.info ("Pre-computing distances for " + distances.getSize () + " pairs");
+            distances.computeDistances (dataSet);
+            if (listener != null) {
+                listener.distanceEvaluations (this, distances.getSize ());
             }
+            if (cacheSampleDistances) {
+                sampleDistances = makeDistanceMatrix (n).copy (distances);
+            }
+        } else {
+            distances.copy (sampleDistances);
         }
+        if (isSquaredLinkage ()) {
+            for (long i = 0, size = distances.getSize (); i < size; ++i) {
+                double distance = distances.get (i);
+                distances.set (i, distance * distance);
+            }
 
-        // loop over the data set identifying the next pair to extract, keep doing that as long as
-        // there are potential pairs
-        int nextId = n;
-        while ((n = clusters.size ()) > 1) {
-            // loop over every possible pair to find the smallest distance to extract - this is an
-            // awful n^2 algorithm. I have a sneaky suspicion we could do better with a heap
-            // approach, but I'll have to come back to that another time - this is in the interest
-            // of simplicity
-            log.info ("Scan over " + ((n - 1) * (n - 1)) + " pair(s)");
-            double min = Double.MAX_VALUE;
-            int iFinal = 0;
-            int jFinal = 0;
-            for (int i = 0, end = n - 1; i < end; ++i) {
-                Cluster iCluster = clusters.get (i);
-                for (int j = i + 1; j < n; ++j) {
-                    Cluster jCluster = clusters.get (j);
-                    Pair pair = new Pair (-1, iCluster, jCluster);
-                    int pairId = pair.getPairId ();
-                    double distance = 0;
-                    Double cachedDistance = distances.get (pairId);
-                    if (cachedDistance != null) {
-                        distance = cachedDistance;
-                    } else {
-                        switch (linkage) {
-                            case USE_MIN_DISTANCE: distance = pair.minDistance (); break;
-                            case USE_MAX_DISTANCE: distance = pair.maxDistance (); break;
-                            case USE_MEAN_DISTANCE: distance = pair.meanDistance (); break;
-                            case USE_CENTROID_DISTANCE: distance = pair.centroidDistance (); break;
-                        }
-                        distances.put (pairId, distance);
-                    }
-                    if (distance < min) {
-                        min = distance;
-                        iFinal = i;
-                        jFinal = j;
+            // ward's distance between two samples is scaled by 2 wa wb / (wa + wb), which is just 1
+            // when they count once each
+            if ((linkage == USE_WARD_DISTANCE) && dataSet.isWeighted ()) {
+                long index = 0;
+                for (int i = 0; i < n; ++i) {
+                    double iWeight = dataSet.getWeight (i);
+                    for (int j = i + 1; j < n; ++j, ++index) {
+                        double jWeight = dataSet.getWeight (j);
+                        distances.set (index, distances.get (index) * ((2 * iWeight * jWeight) / (iWeight + jWeight)));
                     }
                 }
             }
+        }
+        if (listener != null) {
+            long now = System.nanoTime ();
+            listener.phase (this, "distances", now - start);
+            start = now;
+        }
 
-            // remove the two closest clusters, and replace them with a new, combined cluster, we
-            // have to order the removals so that the array order doesn't change for the second one
-            Cluster iCluster = clusters.get (iFinal);
-            Cluster jCluster = clusters.get (jFinal);
+        // merge clusters until there is only one left
+        if (n < 2) {
+            // nothing to merge
+        } else if (linkage == USE_CENTROID_DISTANCE) {
+            nearestNeighborHeap ();
+        } else {
+            nearestNeighborChain ();
+        }
+        distances = null;
+        if (listener != null) {
+            listener.phase (this, "merge", System.nanoTime () - start);
+        }
+    }
 
-            if (iFinal > jFinal) {
-                clusters.remove (iFinal);
-                clusters.remove (jFinal);
-            } else {
-                clusters.remove (jFinal);
-                clusters.remove (iFinal);
+    // children always come before their parents in the dendrogram, so one pass in merge order
+    // builds the sums bottom up in O(n k)
+    private void computeCentroidSums () {
+        int k = dataSet.getK ();
+        int m = dendrogram.getMergeCount ();
+        centroidSums = new double[m * k];
+        centroidWeights = new double[m];
+        for (int i = 0; i < m; ++i) {
+            addSum (dendrogram.getChildA (i), i);
+            addSum (dendrogram.getChildB (i), i);
+        }
+    }
+
+    private void addSum (int id, int merge) {
+        int n = dataSet.getN (), k = dataSet.getK ();
+        int offset = merge * k;
+        if (id < n) {
+            double weight = dataSet.getWeight (id);
+            double[] values = dataSet.get (id).getValues ();
+            for (int j = 0; j < k; ++j) {
+                centroidSums[offset + j] += values[j] * weight;
             }
+            centroidWeights[merge] += weight;
+        } else {
+            for (int j = 0, from = (id - n) * k; j < k; ++j) {
+                centroidSums[offset + j] += centroidSums[from + j];
+            }
+            centroidWeights[merge] += centroidWeights[id - n];
+        }
+    }
+
+    // the samples in a cluster of the tree (ids below n are the samples themselves, and merge i
+    // made cluster n + i), as a read-only view with no copying
+    public IntBuffer getMembers (int id) {
+        return dendrogram.getMembers (id);
+    }
 
-            clusters.add (new Pair (nextId++, iCluster, jCluster));
+    public Tuple getCentroid (int id) {
+        int n = dataSet.getN (), k = dataSet.getK ();
+        if (id < n) {
+            return dataSet.get (id);
+        }
+        double[] centroid = new double[k];
+        double weight = centroidWeights[id - n];
+        for (int j = 0, offset = (id - n) * k; j < k; ++j) {
+            centroid[j] = centroidSums[offset + j] / weight;
         }
+        return new Tuple (centroid);
+    }
 
-        log.info ("Finished");
+    public Dendrogram getDendrogram () {
+        return dendrogram;
     }
 
-    @Override
-    public int getClusterCount () {
-        return dataSet.getN ();
+    // choose the flat clustering reported by getClusterCount and getCluster, the tree is cut so
+    // there are 'clusterCount' clusters. a fresh fit starts with every sample on its own
+    public AgglomeratedHierarchy cutAtCount (int clusterCount) {
+        this.clusterCount = Math.max (1, Math.min (clusterCount, dataSet.getN ()));
+        indexClusters (dendrogram.cutAtCount (clusterCount), this.clusterCount);
+        return this;
+    }
+
+    public AgglomeratedHierarchy cutAtDistance (double threshold) {
+        int[] labels = dendrogram.cutAtDistance (threshold);
+        clusterCount = 0;
+        for (int label : labels) {
+            clusterCount = Math.max (clusterCount, label + 1);
+        }
+        indexClusters (labels, clusterCount);
+        return this;
     }
 
     @Override
-    public Tuple[] getCluster (int i) {
-        // the ith cluster represents a cut in the dendrogram (the tree we built) - a breadth-first
-        // numbering of the tree roots
-        return new Tuple[0];
+    public int getClusterCount () {
+        return clusterCount;
     }
 
 }
@@ -0,0 +1,244 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// agglomerative clustering for data sets too large for the exact O(n^2) method. the hierarchy is
+// built over a few thousand representatives - either a random sample of the data, or the centroids
+// of a mini-batch vector quantization - after every sample is assigned to its nearest
+// representative in one parallel pass. each representative goes into the hierarchy weighted by the
+// number of samples it stands for, so mean, centroid, and ward linkage see the sizes of the
+// clusters in the data. the representatives are the leaves of the tree, and the samples are laid
+// out so each cluster in the tree is still one contiguous range of samples
+public class ApproximateHierarchy extends ClusterAlgorithm {
+    private static final Logger log = LogManager.getLogger (ApproximateHierarchy.class);
+
+    public static final int REPRESENT_BY_SAMPLE = 0;
+    public static final int REPRESENT_BY_CODEBOOK = 1;
+
+    private int representation;
+    private int representativeCount;
+    private int linkage;
+    private long seed;
+
+    private AgglomeratedHierarchy hierarchy;
+    private int[] representativeOf;     // sample -> leaf of the tree it was assigned to
+    private int[] representativeSize;   // leaf -> number of samples assigned to it, never 0
+    private int[] sampleOrder;          // the samples, grouped by leaf, in tree leaf order
+    private int[] leafOffset;           // tree leaf order position -> first position in sampleOrder
+    private double meanErrorSq;
+    private double maxErrorSq;
+
+    private int clusterCount;
+
+    public ApproximateHierarchy (DataSet dataSet) {
+        super (dataSet);
+        representation = REPRESENT_BY_SAMPLE;
+        representativeCount = 2000;
+        linkage = AgglomeratedHierarchy.USE_WARD_DISTANCE;
+        seed = System.currentTimeMillis ();
+    }
+
+    public ApproximateHierarchy (DataSet dataSet, int linkage, int representation, int representativeCount) {
+        this (dataSet);
+        setLinkage (linkage).setRepresentation (representation, representativeCount).fit ();
+    }
+
+    public ApproximateHierarchy setLinkage (int linkage) {
+        this.linkage = linkage;
+        return this;
+    }
+
+    public ApproximateHierarchy setRepresentation (int representation, int representativeCount) {
+        this.representation = representation;
+        this.representativeCount = representativeCount;
+        return this;
+    }
+
+    public ApproximateHierarchy setSeed (long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    private Tuple[] sampleRepresentatives (int m, Random random) {
+        // a partial fisher-yates shuffle of the indices picks m distinct samples
+        int n = dataSet.getN ();
+        int[] indices = new int[n];
+        for (int i = 0; i < n; ++i) {
+            indices[i] = i;
+        }
+        Tuple[] representatives = new Tuple[m];
+        for (int i = 0; i < m; ++i) {
+            int j = i + random.nextInt (n - i);
+            int swap = indices[i]; indices[i] = indices[j]; indices[j] = swap;
+            representatives[i] = dataSet.get (indices[i]);
+        }
+        return representatives;
+    }
+
+    // only the centroids are needed, the samples are assigned to the representatives below
+    private Tuple[] quantizeRepresentatives (int m) {
+        MiniBatchVectorQuantization quantization = new MiniBatchVectorQuantization (dataSet)
+                .setClusterCount (m)
+                .setBatchSize (Math.max (100, 4 * m))
+                .setIterations (100)
+                .setSeed (seed);
+        return quantization.train ().getCentroids ();
+    }
+
+    @Override
+    public ApproximateHierarchy fit () {
+        int n = dataSet.getN ();
+        int m = Math.min (representativeCount, n);
+        log.info ("Start (" + ((representation == REPRESENT_BY_CODEBOOK) ? "codebook" : "sample") + " of " + m + " representatives for " + n + " samples, linkage " + linkage + ", seed " + seed + ")");
+
+        // assign every sample to its nearest representative, the codebook is immutable so all the
+        // threads can share it
+        Tuple[] candidates = (representation == REPRESENT_BY_CODEBOOK) ?
+                quantizeRepresentatives (m) : sampleRepresentatives (m, new Random (seed));
+        Codebook codebook = new Codebook (candidates);
+        representativeOf = new int[n];
+        double[] errorSq = new double[n];
+        IntStream.range (0, n).parallel ().forEach (i -> {
+            Tuple tuple = dataSet.get (i);
+            int representative = codebook.assign (tuple);
+            representativeOf[i] = representative;
+            errorSq[i] = Tuple.deltaNormSq (tuple, candidates[representative]);
+        });
+        meanErrorSq = maxErrorSq = 0;
+        for (double error : errorSq) {
+            meanErrorSq += error;
+            maxErrorSq = Math.max (maxErrorSq, error);
+        }
+        meanErrorSq = (n > 0) ? (meanErrorSq / n) : 0;
+
+        // a codebook centroid can end up with no samples, and it is dropped so that every leaf of
+        // the tree stands for at least one sample
+        int[] counts = new int[m];
+        for (int representative : representativeOf) {
+            ++counts[representative];
+        }
+        int[] renumber = new int[m];
+        int kept = 0;
+        for (int i = 0; i < m; ++i) {
+            renumber[i] = kept;
+            if (counts[i] > 0) {
+                candidates[kept] = candidates[i];
+                counts[kept++] = counts[i];
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            representativeOf[i] = renumber[representativeOf[i]];
+        }
+        m = kept;
+
+        // build the exact hierarchy over the representatives, weighted by their sample counts.
+        // there is only the one fit, so the sample distances aren't kept
+        Tuple[] representatives = Arrays.copyOf (candidates, m);
+        representativeSize = Arrays.copyOf (counts, m);
+        double[] weights = new double[m];
+        for (int i = 0; i < m; ++i) {
+            weights[i] = representativeSize[i];
+        }
+        DataSet representativeSet = new DataSet (representatives).setWeights (weights);
+        hierarchy = new AgglomeratedHierarchy (representativeSet)
+                .setLinkage (linkage)
+                .setCacheSampleDistances (false)
+                .fit ();
+        Dendrogram dendrogram = hierarchy.getDendrogram ();
+
+        // counting sort the samples into the leaf order of the tree, so the samples under any
+        // cluster in the tree are contiguous
+        leafOffset = new int[m + 1];
+        for (int position = 0; position < m; ++position) {
+            leafOffset[position + 1] = leafOffset[position] + representativeSize[dendrogram.getLeaf (position)];
+        }
+        int[] next = new int[m];
+        for (int position = 0; position < m; ++position) {
+            next[dendrogram.getLeaf (position)] = leafOffset[position];
+        }
+        sampleOrder = new int[n];
+        for (int i = 0; i < n; ++i) {
+            sampleOrder[next[representativeOf[i]]++] = i;
+        }
+
+        cutAtCount (m);
+        log.info ("Finished (mean squared error " + meanErrorSq + ", max squared error " + maxErrorSq + ")");
+        return this;
+    }
+
+    public int getRepresentation () {
+        return representation;
+    }
+
+    public int getRepresentativeCount () {
+        return hierarchy.getDataSet ().getN ();
+    }
+
+    public long getSeed () {
+        return seed;
+    }
+
+    // the squared distance from the samples to the representatives they were assigned to, which
+    // bounds how far the approximate tree can be from the exact one
+    public double getMeanErrorSq () {
+        return meanErrorSq;
+    }
+
+    public double getMaxErrorSq () {
+        return maxErrorSq;
+    }
+
+    // the exact hierarchy over the representatives, and the representative each sample went to
+    public AgglomeratedHierarchy getHierarchy () {
+        return hierarchy;
+    }
+
+    public int getRepresentative (int sample) {
+        return representativeOf[sample];
+    }
+
+    // the samples under a cluster of the representatives' tree, as a read-only view
+    public IntBuffer getMembers (int id) {
+        Dendrogram dendrogram = hierarchy.getDendrogram ();
+        int start = leafOffset[dendrogram.getMembersStart (id)];
+        int end = leafOffset[dendrogram.getMembersEnd (id)];
+        return IntBuffer.wrap (sampleOrder, start, end - start).slice ().asReadOnlyBuffer ();
+    }
+
+    public ApproximateHierarchy cutAtCount (int clusterCount) {
+        return setLabels (hierarchy.getDendrogram ().cutAtCount (clusterCount));
+    }
+
+    public ApproximateHierarchy cutAtDistance (double threshold) {
+        return setLabels (hierarchy.getDendrogram ().cutAtDistance (threshold));
+    }
+
+    // the labels are renumbered in order of first sample, like the other algorithms number theirs
+    private ApproximateHierarchy setLabels (int[] representativeLabels) {
+        int n = dataSet.getN ();
+        int[] renumber = new int[representativeLabels.length];
+        Arrays.fill (renumber, -1);
+        int[] labels = new int[n];
+        clusterCount = 0;
+        for (int i = 0; i < n; ++i) {
+            int label = representativeLabels[representativeOf[i]];
+            if (renumber[label] < 0) {
+                renumber[label] = clusterCount++;
+            }
+            labels[i] = renumber[label];
+        }
+        indexClusters (labels, clusterCount);
+        return this;
+    }
+
+    @Override
+    public int getClusterCount () {
+        return clusterCount;
+    }
+}
@@ -53,6 +53,13 @@ public class Bound {
         return this;
     }
 
+    // merge another bound into this one, e.g. when bounds were gathered over parts of a data set
+    public Bound accumulate (Bound bound) {
+        if (bound.min < min) min = bound.min;
+        if (bound.max > max) max = bound.max;
+        return this;
+    }
+
     public boolean contains (double value) {
         return ((value >= min) && (value <= max));
     }
@@ -74,15 +81,38 @@ public class Bound {
         }
     }
 
+    private static Bound[] getEmptyBounds (int k) {
+        Bound[] bounds = new Bound[k];
+        for (int i = 0; i < k; ++i) {
+            bounds[i] = new Bound ();
+        }
+        return bounds;
+    }
+
     public static Bound[] getBounds (Tuple[] tuples) {
         Bound[] bounds = null;
-        if (tuples.length > 0) {
+        int n = tuples.length;
+        if (n > 0) {
             int k = tuples[0].getValues ().length;
-            bounds = new Bound[k];
-            for (int i = 0; i < k; ++i) {
-                bounds[i] = new Bound ();
+            bounds = getEmptyBounds (k);
+            int chunkCount = Utility.chunkCount (n);
+            if (chunkCount == 1) {
+                accumulate (bounds, tuples);
+            } else {
+                // reduce each chunk of the tuples separately, then merge the chunks
+                Bound[][] chunkBounds = Utility.chunks (chunkCount).mapToObj (chunk -> {
+                    Bound[] partial = getEmptyBounds (k);
+                    for (int i = Utility.chunkStart (n, chunk, chunkCount), end = Utility.chunkStart (n, chunk + 1, chunkCount); i < end; ++i) {
+                        accumulate (partial, tuples[i].getValues ());
+                    }
+                    return partial;
+                }).toArray (Bound[][]::new);
+                for (Bound[] partial : chunkBounds) {
+                    for (int j = 0; j < k; ++j) {
+                        bounds[j].accumulate (partial[j]);
+                    }
+                }
             }
-            accumulate (bounds, tuples);
         }
         return bounds;
     }
@@ -2,8 +2,19 @@ package com.brettonw.math;
 
 import com.brettonw.bedrock.bag.BagArray;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
 public abstract class ClusterAlgorithm {
     protected DataSet dataSet;
+    protected ClusterListener listener;
+
+    // the membership of every cluster in compressed sparse row form, the samples in cluster i are
+    // members[memberOffsets[i]] up to (but not including) members[memberOffsets[i + 1]]
+    private int[] memberOffsets;
+    private int[] members;
 
     protected ClusterAlgorithm (DataSet dataSet) {
         this.dataSet = dataSet;
@@ -13,18 +24,108 @@ public abstract class ClusterAlgorithm {
         return dataSet;
     }
 
+    // replace the data set, subclasses keep whatever state they can warm start from (e.g. the
+    // centroids of a previous run), and drop whatever depends on the old data
+    public ClusterAlgorithm setDataSet (DataSet dataSet) {
+        this.dataSet = dataSet;
+        return this;
+    }
+
+    // attach (or with null, detach) a listener for the metrics of every fit. range queries are
+    // reported by the data set, which takes its own listener
+    public ClusterAlgorithm setListener (ClusterListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    // run (or re-run) the algorithm with its current configuration. the expensive setup that
+    // doesn't depend on a changed parameter is kept between calls, so parameter sweeps only pay
+    // for it once
+    public abstract ClusterAlgorithm fit ();
+
     public abstract int getClusterCount ();
-    public abstract Tuple[] getCluster (int i);
 
+    // build the membership index from the cluster of every sample with one counting sort, so it is
+    // O(n) no matter how many clusters there are. samples with a negative cluster (e.g. noise) are
+    // left out. subclasses call this whenever their assignment changes
+    protected void indexClusters (int[] assign, int clusterCount) {
+        memberOffsets = new int[clusterCount + 1];
+        for (int cluster : assign) {
+            if (cluster >= 0) {
+                ++memberOffsets[cluster + 1];
+            }
+        }
+        for (int i = 0; i < clusterCount; ++i) {
+            memberOffsets[i + 1] += memberOffsets[i];
+        }
+        members = new int[memberOffsets[clusterCount]];
+        int[] next = Arrays.copyOf (memberOffsets, clusterCount);
+        for (int i = 0, n = assign.length; i < n; ++i) {
+            int cluster = assign[i];
+            if (cluster >= 0) {
+                members[next[cluster]++] = i;
+            }
+        }
+    }
+
+    // the membership index only exists once the algorithm has been fit
+    private void checkFit () {
+        if (memberOffsets == null) {
+            throw new IllegalStateException ("Not fit");
+        }
+    }
+
+    // the data set indices of the samples in a cluster, as a read-only view into the index
+    public IntBuffer getClusterIndices (int i) {
+        checkFit ();
+        int start = memberOffsets[i];
+        return IntBuffer.wrap (members, start, memberOffsets[i + 1] - start).slice ().asReadOnlyBuffer ();
+    }
+
+    public int getClusterSize (int i) {
+        checkFit ();
+        return memberOffsets[i + 1] - memberOffsets[i];
+    }
+
+    // the cluster of every sample, or -1 for a sample that isn't in any cluster
+    public int[] getLabels () {
+        checkFit ();
+        int[] labels = new int[dataSet.getN ()];
+        Arrays.fill (labels, -1);
+        for (int i = 0, clusterCount = memberOffsets.length - 1; i < clusterCount; ++i) {
+            for (int j = memberOffsets[i], end = memberOffsets[i + 1]; j < end; ++j) {
+                labels[members[j]] = i;
+            }
+        }
+        return labels;
+    }
+
+    public Tuple[] getCluster (int i) {
+        checkFit ();
+        int start = memberOffsets[i];
+        Tuple[] tuples = new Tuple[memberOffsets[i + 1] - start];
+        for (int j = 0; j < tuples.length; ++j) {
+            tuples[j] = dataSet.get (members[start + j]);
+        }
+        return tuples;
+    }
+
+    // write the results straight to a stream, see ClusterExporter for the formats
+    public void export (OutputStream outputStream, int format, boolean includeValues) throws IOException {
+        new ClusterExporter (this, format, includeValues).write (outputStream);
+    }
+
+    // one pass over the membership index, O(n). this builds the whole result in memory, so large
+    // data sets should use the streaming export instead
     public BagArray export () {
+        checkFit ();
         int clusterCount = getClusterCount ();
         BagArray bagArray = new BagArray (clusterCount);
         for (int i = 0; i < clusterCount; ++i) {
-            Tuple[] tuples = getCluster (i);
-            int clusterSize = tuples.length;
+            int clusterSize = getClusterSize (i);
             BagArray clusterBagArray = new BagArray (clusterSize);
-            for (Tuple tuple : tuples) {
-                double[] values = tuple.getValues ();
+            for (int j = memberOffsets[i], end = memberOffsets[i + 1]; j < end; ++j) {
+                double[] values = dataSet.get (members[j]).getValues ();
                 int valuesSize = values.length;
                 BagArray valuesBagArray = new BagArray (valuesSize);
                 for (double value : values) {
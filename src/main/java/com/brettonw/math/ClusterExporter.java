@@ -0,0 +1,144 @@
+package com.brettonw.math;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+// writes the results of a clustering one sample at a time through a fixed size buffer, so nothing
+// but the label array is ever materialized, no matter how large the data set is. the samples are
+// written in data set order, with -1 as the label of a sample that isn't in any cluster. formats:
+//   binary - little-endian, a header of n and k (0 if the values aren't included) as 32-bit ints,
+//            then per sample the label as a 32-bit int followed by k 64-bit doubles
+//   csv    - a header line ("label" or "label,v0,v1,..."), then one line per sample
+//   ndjson - one json object per sample and per line, {"label":l} or {"label":l,"values":[...]},
+//            json has no NaN or infinity, so those values are written as null
+public class ClusterExporter {
+    public static final int EXPORT_BINARY = 0;
+    public static final int EXPORT_CSV = 1;
+    public static final int EXPORT_NDJSON = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ClusterAlgorithm clusterAlgorithm;
+    private int format;
+    private boolean includeValues;
+
+    private WritableByteChannel channel;
+    private ByteBuffer buffer;
+
+    public ClusterExporter (ClusterAlgorithm clusterAlgorithm, int format, boolean includeValues) {
+        // checked here, an empty data set would never write a sample to find out
+        if ((format < EXPORT_BINARY) || (format > EXPORT_NDJSON)) {
+            throw new IllegalArgumentException ("Unknown export format (" + format + ")");
+        }
+        this.clusterAlgorithm = clusterAlgorithm;
+        this.format = format;
+        this.includeValues = includeValues;
+    }
+
+    // the stream is flushed, but not closed
+    public void write (OutputStream outputStream) throws IOException {
+        write (Channels.newChannel (outputStream));
+        outputStream.flush ();
+    }
+
+    // the channel is not closed
+    public void write (WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate (BUFFER_SIZE).order (ByteOrder.LITTLE_ENDIAN);
+        try {
+            DataSet dataSet = clusterAlgorithm.getDataSet ();
+            int n = dataSet.getN ();
+            int k = includeValues ? dataSet.getK () : 0;
+            int[] labels = clusterAlgorithm.getLabels ();
+            writeHeader (n, k);
+            for (int i = 0; i < n; ++i) {
+                writeSample (labels[i], includeValues ? dataSet.get (i).getValues () : null, k);
+            }
+            flush ();
+        } finally {
+            this.channel = null;
+            buffer = null;
+        }
+    }
+
+    private void writeHeader (int n, int k) throws IOException {
+        switch (format) {
+            case EXPORT_BINARY:
+                reserve (2 * Integer.BYTES);
+                buffer.putInt (n).putInt (k);
+                break;
+            case EXPORT_CSV:
+                put ("label");
+                for (int j = 0; j < k; ++j) {
+                    put (",v").put (Integer.toString (j));
+                }
+                put ("\n");
+                break;
+            case EXPORT_NDJSON:
+                break;
+        }
+    }
+
+    private void writeSample (int label, double[] values, int k) throws IOException {
+        switch (format) {
+            case EXPORT_BINARY:
+                reserve (Integer.BYTES + (k * Double.BYTES));
+                buffer.putInt (label);
+                for (int j = 0; j < k; ++j) {
+                    buffer.putDouble (values[j]);
+                }
+                break;
+            case EXPORT_CSV:
+                put (Integer.toString (label));
+                for (int j = 0; j < k; ++j) {
+                    put (",").put (Double.toString (values[j]));
+                }
+                put ("\n");
+                break;
+            case EXPORT_NDJSON:
+                put ("{\"label\":").put (Integer.toString (label));
+                if (k > 0) {
+                    put (",\"values\":[");
+                    for (int j = 0; j < k; ++j) {
+                        put ((j > 0) ? "," : "").put (Double.isFinite (values[j]) ? Double.toString (values[j]) : "null");
+                    }
+                    put ("]");
+                }
+                put ("}\n");
+                break;
+        }
+    }
+
+    // make room for 'count' bytes, a single record is always smaller than the buffer except for
+    // absurdly wide tuples, which get a bigger buffer
+    private void reserve (int count) throws IOException {
+        if (buffer.remaining () < count) {
+            flush ();
+            if (buffer.capacity () < count) {
+                buffer = ByteBuffer.allocate (count).order (ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    // the text formats are all ascii, so the characters go straight into the buffer
+    private ClusterExporter put (String string) throws IOException {
+        int length = string.length ();
+        reserve (length);
+        for (int i = 0; i < length; ++i) {
+            buffer.put ((byte) string.charAt (i));
+        }
+        return this;
+    }
+
+    private void flush () throws IOException {
+        buffer.flip ();
+        while (buffer.hasRemaining ()) {
+            channel.write (buffer);
+        }
+        buffer.clear ();
+    }
+}
@@ -0,0 +1,24 @@
+package com.brettonw.math;
+
+// a machine-readable view of what the data sets and cluster algorithms are doing, for metrics. the
+// sources only gather the numbers (timings, counters) when a listener is attached, so without one
+// the instrumentation costs nothing but a null check. every method has an empty default, so a
+// listener only implements what it wants. the 'source' is the data set or algorithm reporting
+public interface ClusterListener {
+    // how long a named phase of a build or fit took (e.g. "sort", "distances", "merge")
+    default void phase (Object source, String phase, long nanoseconds) {}
+
+    // one iteration of an iterative algorithm: the sum of the squared distances the centroids
+    // moved, and how many samples changed cluster (or -1 if the algorithm doesn't track it)
+    default void iteration (Object source, int iteration, double delta, int reassigned) {}
+
+    // one range query: how many index cells it looked at, how many points it compared against the
+    // locus, and how many it found in range
+    default void rangeQuery (Object source, int cellsVisited, int pointsScanned, int found) {}
+
+    // a count of the point-to-point (or point-to-centroid) distances computed in a fit or phase
+    default void distanceEvaluations (Object source, long count) {}
+
+    // the number of range queries an algorithm issued during a fit
+    default void rangeQueries (Object source, long count) {}
+}
@@ -0,0 +1,137 @@
+package com.brettonw.math;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// a frozen set of centroids for assigning new points to their nearest centroid. the centroids are
+// stored flat and ordered by their norm, and the triangle inequality says | |x| - |c| | <= |x - c|,
+// so a search that starts at the centroids whose norm is closest to the point's and walks outward
+// can stop on each side as soon as the norm gap alone is larger than the best distance found. the
+// state is never modified after construction, and assignment allocates nothing, so one codebook can
+// be shared by any number of threads
+public class Codebook {
+    private final int c;
+    private final int k;
+    private final double[] centroids;   // c k-valued centroids, flattened in norm order
+    private final double[] norms;       // c centroid norms, ascending
+    private final int[] order;          // norm order position -> original centroid index
+    private final int[] positionOf;     // original centroid index -> norm order position
+
+    public Codebook (Tuple... centroids) {
+        c = centroids.length;
+        k = centroids[0].getValues ().length;
+
+        // sort the centroid indices by norm
+        double[] unsortedNorms = new double[c];
+        Integer[] sorted = new Integer[c];
+        for (int i = 0; i < c; ++i) {
+            unsortedNorms[i] = Tuple.norm (centroids[i]);
+            sorted[i] = i;
+        }
+        Arrays.sort (sorted, Comparator.comparingDouble (i -> unsortedNorms[i]));
+
+        // and lay them out flat in that order
+        this.centroids = new double[c * k];
+        norms = new double[c];
+        order = new int[c];
+        positionOf = new int[c];
+        for (int i = 0; i < c; ++i) {
+            int index = sorted[i];
+            System.arraycopy (centroids[index].getValues (), 0, this.centroids, i * k, k);
+            norms[i] = unsortedNorms[index];
+            order[i] = index;
+            positionOf[index] = i;
+        }
+    }
+
+    public int getClusterCount () {
+        return c;
+    }
+
+    public int getK () {
+        return k;
+    }
+
+    public Tuple getCentroid (int i) {
+        int j = positionOf[i];
+        return new Tuple (Arrays.copyOfRange (centroids, j * k, (j + 1) * k));
+    }
+
+    // squared distance from values to the centroid at norm order position j, stopping early once
+    // the partial sum can't beat the limit
+    private double deltaNormSq (double[] values, int j, double limit) {
+        double acc = 0;
+        for (int i = 0, offset = j * k; (i < k) && (acc < limit); ++i) {
+            double delta = values[i] - centroids[offset + i];
+            acc += delta * delta;
+        }
+        return acc;
+    }
+
+    public int assign (double[] values) {
+        return assign (values, null);
+    }
+
+    // the same, adding the number of distances it computed to evaluations[0] (if it isn't null)
+    int assign (double[] values, long[] evaluations) {
+        double normSq = 0;
+        for (int i = 0; i < k; ++i) {
+            normSq += values[i] * values[i];
+        }
+        double norm = Math.sqrt (normSq);
+
+        // find the first centroid whose norm is not less than the norm of the point, and search
+        // outward from there in both directions
+        int hi = Arrays.binarySearch (norms, norm);
+        if (hi < 0) {
+            hi = -(hi + 1);
+        }
+        int lo = hi - 1;
+
+        // start with the nearer of the two centroids on either side, so there is an answer even
+        // for a point whose distances don't compare (a NaN value)
+        int nearest = ((hi < c) && ((lo < 0) || ((norms[hi] - norm) <= (norm - norms[lo])))) ? hi++ : lo--;
+        double nearestNormSq = deltaNormSq (values, nearest, Double.MAX_VALUE);
+        if (evaluations != null) {
+            ++evaluations[0];
+        }
+        while ((lo >= 0) || (hi < c)) {
+            double loGap = (lo >= 0) ? (norm - norms[lo]) : Double.MAX_VALUE;
+            double hiGap = (hi < c) ? (norms[hi] - norm) : Double.MAX_VALUE;
+
+            // take the closer side next (or the only side left), and stop when even that one is out
+            // of reach
+            boolean useLo = (hi >= c) || ((lo >= 0) && (loGap < hiGap));
+            double gap = useLo ? loGap : hiGap;
+            if ((gap * gap) >= nearestNormSq) {
+                break;
+            }
+            int j = useLo ? lo-- : hi++;
+            if (evaluations != null) {
+                ++evaluations[0];
+            }
+            double distanceSq = deltaNormSq (values, j, nearestNormSq);
+            if (distanceSq < nearestNormSq) {
+                nearestNormSq = distanceSq;
+                nearest = j;
+            }
+        }
+        return order[nearest];
+    }
+
+    public int assign (Tuple tuple) {
+        return assign (tuple.getValues ());
+    }
+
+    public void assignBatch (Tuple[] tuples, int[] out) {
+        for (int i = 0, end = tuples.length; i < end; ++i) {
+            out[i] = assign (tuples[i].getValues ());
+        }
+    }
+
+    public void assignBatch (double[][] values, int[] out) {
+        for (int i = 0, end = values.length; i < end; ++i) {
+            out[i] = assign (values[i]);
+        }
+    }
+}
@@ -13,29 +13,66 @@ public class DataSet {
 
     protected int n;              // number of tuples
     protected int k;              // dimensionality of the cluster space
+    protected double[] weights;   // n weights, or null if every tuple counts once
+
+    protected ClusterListener listener;
+
+    // for a subclass that restores its state some other way
+    protected DataSet () {
+    }
 
     public DataSet (Tuple... tuples) {
         setTuples (tuples);
     }
 
+    // for a loader that already computed the bounds while it was reading the tuples
+    public DataSet (Tuple[] tuples, Bound[] bounds) {
+        setTuples (tuples, bounds);
+    }
+
     public void setTuples (Tuple... tuples) {
+        setTuples (tuples, (tuples.length > 0) ? Bound.getBounds (tuples) : null);
+    }
+
+    public void setTuples (Tuple[] tuples, Bound[] bounds) {
         this.tuples = tuples;
         n = tuples.length;
+        weights = null;
         if (n > 0) {
-            // create the bounds objects
-            bounds = Bound.getBounds (tuples);
+            this.bounds = bounds;
             k = bounds.length;
 
             // add a little bit of buffer so that the contents are entirely enclosed
             Bound.resize (bounds, 1.0 + 1.0e-6);
         }
 
-        // spew the stats
-        log.info ("N: " + n);
-        log.info ("K: " + k);
-        for (int i = 0; i < k; ++i) {
-            log.info ("Bounds " + i + "(" + bounds[i].getMin () + ", " + bounds[i].getMax () + ")");
+        log.info ("N: " + n + ", K: " + k);
+    }
+
+    // give each tuple a weight, e.g. the number of samples it stands for after Deduplication. the
+    // weights are in the order of the tuples as they are now (so after any sorting a subclass did
+    // in setTuples), and null makes every tuple count once again
+    public DataSet setWeights (double... weights) {
+        if ((weights != null) && (weights.length != getN ())) {
+            throw new IllegalArgumentException ("Expected " + getN () + " weights, got " + weights.length);
         }
+        this.weights = weights;
+        return this;
+    }
+
+    public boolean isWeighted () {
+        return weights != null;
+    }
+
+    public double getWeight (int i) {
+        return (weights != null) ? weights[i] : 1;
+    }
+
+    // attach (or with null, detach) a listener that hears about every range query, and about the
+    // phases of any later setTuples
+    public DataSet setListener (ClusterListener listener) {
+        this.listener = listener;
+        return this;
     }
 
     public int[] rangeSearch (Tuple locus, double range) {
@@ -50,9 +87,36 @@ public class DataSet {
             }
         }
 
+        if (listener != null) {
+            listener.rangeQuery (this, 1, n, list.size ());
+        }
         return Utility.IntegerListToIntArray (list);
     }
 
+    // a range search around tuple i, which a subclass can do without fetching the tuple
+    public int[] rangeSearch (int i, double range) {
+        return rangeSearch (get (i), range);
+    }
+
+    // the squared distance between tuples i and j
+    public double deltaNormSq (int i, int j) {
+        return Tuple.deltaNormSq (get (i), get (j));
+    }
+
+    // the count tuples nearest to the locus, nearest first
+    public int[] nearest (Tuple locus, int count) {
+        // naive scan, an exhaustive search over all the tuples
+        NearestHeap nearest = new NearestHeap (Math.min (count, getN ()));
+        for (int i = 0, end = getN (); i < end; ++i) {
+            nearest.offer (i, Tuple.deltaNormSq (get (i), locus));
+        }
+
+        if (listener != null) {
+            listener.rangeQuery (this, 1, getN (), Math.min (count, getN ()));
+        }
+        return nearest.toArray ();
+    }
+
     public Tuple[] getTuples (int[] selection) {
         Tuple[] result = new Tuple[selection.length];
         for (int i = 0, selectionLength = selection.length; i < selectionLength; ++i) {
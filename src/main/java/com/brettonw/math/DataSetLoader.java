@@ -0,0 +1,438 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+// reads a data set straight from a file, without going through a BagObject per row. the file is
+// read through positional reads on one channel, so it can be split into chunks that are parsed in
+// parallel, and the bounds are accumulated in the same pass as the parse. formats:
+//   csv    - one tuple per line, the selected columns (by number, or by name from a header line)
+//            are parsed as doubles and any other columns are skipped without parsing
+//   binary - little-endian, a header of n and k as 32-bit ints, then n k-valued rows of 64-bit
+//            doubles
+public class DataSetLoader {
+    private static final Logger log = LogManager.getLogger (DataSetLoader.class);
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private char separator;
+    private boolean header;
+    private int[] columns;
+    private String[] columnNames;
+    private boolean parallel;
+    private long chunkSize;
+    private boolean spatiallyIndexed;
+
+    public DataSetLoader () {
+        separator = ',';
+        header = false;
+        parallel = true;
+        chunkSize = 4 * 1024 * 1024;
+        spatiallyIndexed = false;
+    }
+
+    public DataSetLoader setSeparator (char separator) {
+        this.separator = separator;
+        return this;
+    }
+
+    // skip the first line of a csv file
+    public DataSetLoader setHeader (boolean header) {
+        this.header = header;
+        return this;
+    }
+
+    // the csv columns to read, by number - all of them if this is never set
+    public DataSetLoader setColumns (int... columns) {
+        this.columns = columns;
+        columnNames = null;
+        return this;
+    }
+
+    // the csv columns to read, by their name in the header line
+    public DataSetLoader setColumns (String... columnNames) {
+        this.columnNames = columnNames;
+        columns = null;
+        header = true;
+        return this;
+    }
+
+    public DataSetLoader setParallel (boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    // the smallest piece of a file worth handing to a separate task
+    public DataSetLoader setChunkSize (long chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    // build a SpatiallyIndexed data set instead of a plain one
+    public DataSetLoader setSpatiallyIndexed (boolean spatiallyIndexed) {
+        this.spatiallyIndexed = spatiallyIndexed;
+        return this;
+    }
+
+    private int chunkCount (long size) {
+        if (! parallel) {
+            return 1;
+        }
+        long chunks = Math.min (ForkJoinPool.getCommonPoolParallelism () * 4L, size / chunkSize);
+        return (int) Math.max (1, chunks);
+    }
+
+    private DataSet makeDataSet (Tuple[] tuples, Bound[] bounds) {
+        return spatiallyIndexed ? new SpatiallyIndexed (tuples, bounds) : new DataSet (tuples, bounds);
+    }
+
+    // the tuples parsed from one chunk of a file, and their bounds
+    private static class Chunk {
+        private Tuple[] tuples = new Tuple[1024];
+        private int count;
+        private Bound[] bounds;
+
+        public Chunk (int k) {
+            bounds = new Bound[k];
+            for (int j = 0; j < k; ++j) {
+                bounds[j] = new Bound ();
+            }
+        }
+
+        public void add (double[] values) {
+            if (count == tuples.length) {
+                tuples = Arrays.copyOf (tuples, count * 2);
+            }
+            tuples[count++] = new Tuple (values);
+            for (int j = 0; j < values.length; ++j) {
+                bounds[j].accumulate (values[j]);
+            }
+        }
+    }
+
+    // stitch the chunks back together in file order, and merge their bounds
+    private DataSet combine (Chunk[] chunks, int k) {
+        int n = 0;
+        for (Chunk chunk : chunks) {
+            n += chunk.count;
+        }
+        Tuple[] tuples = new Tuple[n];
+        Bound[] bounds = new Bound[k];
+        for (int j = 0; j < k; ++j) {
+            bounds[j] = new Bound ();
+        }
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy (chunk.tuples, 0, tuples, offset, chunk.count);
+            offset += chunk.count;
+            for (int j = 0; j < k; ++j) {
+                if (chunk.count > 0) {
+                    bounds[j].accumulate (chunk.bounds[j].getMin ()).accumulate (chunk.bounds[j].getMax ());
+                }
+            }
+        }
+        return makeDataSet (tuples, bounds);
+    }
+
+    // run one task per chunk, and unwrap the exception if any of them fails to read
+    private Chunk[] parseChunks (int chunkCount, ChunkParser parser) throws IOException {
+        try {
+            IntStream range = IntStream.range (0, chunkCount);
+            return (parallel ? range.parallel () : range).mapToObj (chunk -> {
+                try {
+                    return parser.parse (chunk);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException (exception);
+                }
+            }).toArray (Chunk[]::new);
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause ();
+        }
+    }
+
+    private interface ChunkParser {
+        Chunk parse (int chunk) throws IOException;
+    }
+
+    //----------------------------------------------------------------------------------------------
+    // csv
+    //----------------------------------------------------------------------------------------------
+
+    // a forward-only view of a byte range of the file, read in blocks with positional reads so
+    // several of these can share one channel
+    private static class ByteReader {
+        private FileChannel channel;
+        private long end;
+        private ByteBuffer block;
+        private long blockPosition;     // file position of the first byte in the block
+
+        public ByteReader (FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.end = end;
+            block = ByteBuffer.allocate (BLOCK_SIZE);
+            blockPosition = start;
+            block.limit (0);
+        }
+
+        // the file position of the next byte
+        public long position () {
+            return blockPosition + block.position ();
+        }
+
+        // the next byte, or -1 at the end of the range
+        public int next () throws IOException {
+            if (! block.hasRemaining ()) {
+                blockPosition += block.limit ();
+                block.clear ();
+                if (blockPosition >= end) {
+                    block.limit (0);
+                    return -1;
+                }
+                block.limit ((int) Math.min (BLOCK_SIZE, end - blockPosition));
+                while (block.hasRemaining ()) {
+                    if (channel.read (block, blockPosition + block.position ()) < 0) {
+                        break;
+                    }
+                }
+                block.flip ();
+                if (! block.hasRemaining ()) {
+                    return -1;
+                }
+            }
+            return block.get () & 0xff;
+        }
+    }
+
+    // parse a decimal number from the bytes of a field. plain decimals with up to 15 significant
+    // digits are exact as a long divided by a power of ten, anything else falls back to the library
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    static double parseDouble (byte[] bytes, int start, int end) {
+        // trim spaces and quotes
+        while ((start < end) && ((bytes[start] == ' ') || (bytes[start] == '"'))) ++start;
+        while ((end > start) && ((bytes[end - 1] == ' ') || (bytes[end - 1] == '"') || (bytes[end - 1] == '\r'))) --end;
+
+        int i = start;
+        boolean negative = false;
+        if ((i < end) && ((bytes[i] == '-') || (bytes[i] == '+'))) {
+            negative = bytes[i++] == '-';
+        }
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean point = false, sawDigit = false, simple = i < end;
+        for (; (i < end) && simple; ++i) {
+            byte b = bytes[i];
+            if ((b >= '0') && (b <= '9')) {
+                sawDigit = true;
+                if ((mantissa > 0) || (b != '0')) {
+                    ++digits;
+                }
+                mantissa = (mantissa * 10) + (b - '0');
+                if (point) {
+                    ++scale;
+                }
+            } else if ((b == '.') && (! point)) {
+                point = true;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && sawDigit && (digits <= 15) && (scale < POWERS_OF_TEN.length)) {
+            double value = mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble (new String (bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    // split a line into fields at the separator
+    private int splitLine (byte[] line, int length, int[] fieldStarts, int[] fieldEnds) {
+        int fieldCount = 0, fieldStart = 0;
+        for (int i = 0; i <= length; ++i) {
+            if ((i == length) || (line[i] == separator)) {
+                if (fieldCount < fieldStarts.length) {
+                    fieldStarts[fieldCount] = fieldStart;
+                    fieldEnds[fieldCount] = i;
+                }
+                ++fieldCount;
+                fieldStart = i + 1;
+            }
+        }
+        return fieldCount;
+    }
+
+    // the line accumulator for one chunk, returns the length of the line or -1 at the end
+    private static int readLine (ByteReader reader, byte[][] line) throws IOException {
+        int length = 0;
+        int b = reader.next ();
+        if (b < 0) {
+            return -1;
+        }
+        while ((b >= 0) && (b != '\n')) {
+            if (length == line[0].length) {
+                line[0] = Arrays.copyOf (line[0], length * 2);
+            }
+            line[0][length++] = (byte) b;
+            b = reader.next ();
+        }
+        return length;
+    }
+
+    private String[] readHeader (FileChannel channel) throws IOException {
+        byte[][] line = { new byte[256] };
+        int length = readLine (new ByteReader (channel, 0, channel.size ()), line);
+        String text = (length > 0) ? new String (line[0], 0, length, StandardCharsets.UTF_8).trim () : "";
+        String[] names = text.split (Pattern.quote (String.valueOf (separator)), -1);
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = names[i].trim ().replace ("\"", "");
+        }
+        return names;
+    }
+
+    private int[] resolveColumns (FileChannel channel) throws IOException {
+        if (columnNames != null) {
+            String[] names = readHeader (channel);
+            int[] resolved = new int[columnNames.length];
+            for (int i = 0; i < columnNames.length; ++i) {
+                resolved[i] = Arrays.asList (names).indexOf (columnNames[i]);
+                if (resolved[i] < 0) {
+                    throw new IllegalArgumentException ("Column (" + columnNames[i] + ") is not in the header");
+                }
+            }
+            return resolved;
+        }
+        if (columns != null) {
+            return columns;
+        }
+
+        // all of the columns, counted from the header or the first line
+        byte[][] line = { new byte[256] };
+        int length = readLine (new ByteReader (channel, 0, channel.size ()), line);
+        int fieldCount = (length > 0) ? splitLine (line[0], length, new int[0], new int[0]) : 0;
+        int[] all = new int[fieldCount];
+        for (int i = 0; i < fieldCount; ++i) {
+            all[i] = i;
+        }
+        return all;
+    }
+
+    public DataSet loadCsv (Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open (path, StandardOpenOption.READ)) {
+            long size = channel.size ();
+            int[] selected = resolveColumns (channel);
+            int k = selected.length;
+            int fieldLimit = 0;
+            for (int column : selected) {
+                fieldLimit = Math.max (fieldLimit, column + 1);
+            }
+            int chunkCount = chunkCount (size);
+            log.info ("Loading " + path + " (" + size + " bytes, " + k + " columns, " + chunkCount + " chunks)");
+
+            // every chunk parses the lines that start inside its byte range
+            int fields = fieldLimit;
+            Chunk[] chunks = parseChunks (chunkCount, chunk -> {
+                long start = (size * chunk) / chunkCount;
+                long end = (size * (chunk + 1)) / chunkCount;
+                Chunk result = new Chunk (k);
+
+                // skip the partial line the previous chunk owns, by starting one byte back and
+                // reading up to the first newline. a chunk that starts right after a newline only
+                // skips that newline
+                ByteReader reader = new ByteReader (channel, Math.max (0, start - 1), size);
+                byte[][] line = { new byte[256] };
+                if ((start > 0) || header) {
+                    if ((start == 0) || (reader.next () != '\n')) {
+                        readLine (reader, line);
+                    }
+                }
+
+                int[] fieldStarts = new int[fields];
+                int[] fieldEnds = new int[fields];
+                while (reader.position () < end) {
+                    int length = readLine (reader, line);
+                    if (length < 0) {
+                        break;
+                    }
+                    if ((length == 0) || ((length == 1) && (line[0][0] == '\r'))) {
+                        continue;
+                    }
+                    int fieldCount = splitLine (line[0], length, fieldStarts, fieldEnds);
+                    if (fieldCount < fields) {
+                        throw new IllegalArgumentException ("Line has " + fieldCount + " fields, expected at least " + fields);
+                    }
+                    double[] values = new double[k];
+                    for (int j = 0; j < k; ++j) {
+                        values[j] = parseDouble (line[0], fieldStarts[selected[j]], fieldEnds[selected[j]]);
+                    }
+                    result.add (values);
+                }
+                return result;
+            });
+            return combine (chunks, k);
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+    // binary
+    //----------------------------------------------------------------------------------------------
+
+    public DataSet loadBinary (Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open (path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate (2 * Integer.BYTES).order (ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining () && (channel.read (header, header.position ()) >= 0)) {}
+            header.flip ();
+            int n = header.getInt ();
+            int k = header.getInt ();
+            long rowBytes = (long) k * Double.BYTES;
+            if (channel.size () < header.capacity () + (n * rowBytes)) {
+                throw new IllegalArgumentException ("File is too short for " + n + " rows of " + k + " values");
+            }
+            int chunkCount = chunkCount (n * rowBytes);
+            log.info ("Loading " + path + " (" + n + " rows, " + k + " columns, " + chunkCount + " chunks)");
+
+            // every chunk reads a contiguous range of rows, a block at a time
+            Chunk[] chunks = parseChunks (chunkCount, chunk -> {
+                int start = (int) (((long) n * chunk) / chunkCount);
+                int end = (int) (((long) n * (chunk + 1)) / chunkCount);
+                Chunk result = new Chunk (k);
+                int rowsPerBlock = (int) Math.max (1, BLOCK_SIZE / Math.max (1, rowBytes));
+                ByteBuffer block = ByteBuffer.allocate ((int) (rowsPerBlock * rowBytes)).order (ByteOrder.LITTLE_ENDIAN);
+                for (int row = start; row < end; row += rowsPerBlock) {
+                    int rows = Math.min (rowsPerBlock, end - row);
+                    long position = header.capacity () + (row * rowBytes);
+                    block.clear ().limit ((int) (rows * rowBytes));
+                    while (block.hasRemaining ()) {
+                        if (channel.read (block, position + block.position ()) < 0) {
+                            throw new IOException ("Unexpected end of file");
+                        }
+                    }
+                    block.flip ();
+                    for (int i = 0; i < rows; ++i) {
+                        double[] values = new double[k];
+                        for (int j = 0; j < k; ++j) {
+                            values[j] = block.getDouble ();
+                        }
+                        result.add (values);
+                    }
+                }
+                return result;
+            });
+            return combine (chunks, k);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+
+// collapses rows with exactly the same coordinates into one tuple, weighted by the number of rows
+// it stands for, so each distinct point is indexed, searched, and compared only once. rows are
+// matched on the bits of their values, so only exact repeats collapse. the clustering is done on
+// the weighted data set, and expand gives the labels back to the original rows
+public class Deduplication {
+    private static final Logger log = LogManager.getLogger (Deduplication.class);
+
+    private int rowCount;
+    private int[] pointOf;      // row -> tuple of the data set
+    private DataSet dataSet;
+
+    public Deduplication (Tuple[] rows, boolean spatiallyIndexed) {
+        rowCount = rows.length;
+        pointOf = new int[rowCount];
+
+        // an open addressing table of the first row of each distinct point, sized to at most half
+        // full so the probe sequences stay short
+        int capacity = Integer.highestOneBit (Math.max (1, rowCount)) << 2;
+        int[] table = new int[capacity];
+        Arrays.fill (table, -1);
+        int[] firstRow = new int[rowCount];
+        double[] counts = new double[rowCount];
+        int count = 0;
+        for (int row = 0; row < rowCount; ++row) {
+            double[] values = rows[row].getValues ();
+            int slot = hash (values) & (capacity - 1);
+            while ((table[slot] >= 0) && (! same (values, rows[firstRow[table[slot]]].getValues ()))) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (table[slot] < 0) {
+                table[slot] = count;
+                firstRow[count++] = row;
+            }
+            pointOf[row] = table[slot];
+            ++counts[table[slot]];
+        }
+
+        // build the data set of distinct points
+        Tuple[] tuples = new Tuple[count];
+        for (int i = 0; i < count; ++i) {
+            tuples[i] = rows[firstRow[i]];
+        }
+        double[] weights = Arrays.copyOf (counts, count);
+        if (spatiallyIndexed && (count > 0)) {
+            // the index sorts the tuples, so the weights and the rows have to follow them
+            SpatiallyIndexed indexed = new SpatiallyIndexed (tuples);
+            int[] permutation = indexed.getPermutation ();
+            int[] positionOf = new int[count];
+            for (int position = 0; position < count; ++position) {
+                positionOf[permutation[position]] = position;
+                weights[position] = counts[permutation[position]];
+            }
+            for (int row = 0; row < rowCount; ++row) {
+                pointOf[row] = positionOf[pointOf[row]];
+            }
+            dataSet = indexed;
+        } else {
+            dataSet = new DataSet (tuples);
+        }
+        dataSet.setWeights (weights);
+        log.info ("Collapsed " + rowCount + " rows into " + count + " points");
+    }
+
+    private static int hash (double[] values) {
+        long hash = 0;
+        for (double value : values) {
+            hash = (hash * 0x9e3779b97f4a7c15L) + Double.doubleToLongBits (value);
+        }
+
+        // mix the high bits down, round numbers differ only in the high bits of their values
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (hash ^ (hash >>> 33));
+    }
+
+    private static boolean same (double[] a, double[] b) {
+        for (int j = 0; j < a.length; ++j) {
+            if (Double.doubleToLongBits (a[j]) != Double.doubleToLongBits (b[j])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the weighted data set of distinct points
+    public DataSet getDataSet () {
+        return dataSet;
+    }
+
+    public int getRowCount () {
+        return rowCount;
+    }
+
+    // the tuple of the data set that a row collapsed into
+    public int getPoint (int row) {
+        return pointOf[row];
+    }
+
+    // labels of the points of the data set, back out to one per row
+    public int[] expand (int[] labels) {
+        int[] rowLabels = new int[rowCount];
+        for (int row = 0; row < rowCount; ++row) {
+            rowLabels[row] = labels[pointOf[row]];
+        }
+        return rowLabels;
+    }
+
+    public int[] expand (ClusterAlgorithm clusterAlgorithm) {
+        return expand (clusterAlgorithm.getLabels ());
+    }
+}
@@ -0,0 +1,218 @@
+package com.brettonw.math;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// the merge history of an agglomerative clustering over n samples, in the same layout as a scipy
+// linkage matrix: merge i joins clusters a and b at some distance into a new cluster of the given
+// size with id n + i, where ids below n are the samples themselves. a flat clustering at any level
+// is a prefix of the merges, applied with a union-find, so every cut is O(n). the samples are also
+// laid out in leaf order, so the members of any cluster are one contiguous range
+// https://docs.scipy.org/doc/scipy/reference/generated/scipy.cluster.hierarchy.linkage.html
+public class Dendrogram {
+    private int n;
+    private int[] childA;
+    private int[] childB;
+    private double[] distance;
+    private int[] size;
+    private int[] leafOrder;    // the samples, in the order a depth first walk of the tree sees them
+    private int[] leafStart;    // cluster id -> first position of its members in leaf order
+
+    // the merges in the order they happened, with ids assigned in that order too. when 'sort' is
+    // set, the merges are reordered by distance (which only keeps children ahead of their parents
+    // for a monotonic linkage)
+    public Dendrogram (int n, int[] childA, int[] childB, double[] distance, boolean sort) {
+        this.n = n;
+        int m = childA.length;
+        this.childA = new int[m];
+        this.childB = new int[m];
+        this.distance = new double[m];
+        size = new int[m];
+
+        // the merge order (a stable sort, so ties keep children first)
+        Integer[] order = new Integer[m];
+        for (int i = 0; i < m; ++i) {
+            order[i] = i;
+        }
+        if (sort) {
+            Arrays.sort (order, Comparator.comparingDouble (i -> distance[i]));
+        }
+        int[] newIndex = new int[m];
+        for (int i = 0; i < m; ++i) {
+            newIndex[order[i]] = i;
+        }
+
+        // relabel the merged ids to match, and accumulate the sizes
+        for (int i = 0; i < m; ++i) {
+            int merge = order[i];
+            int a = (childA[merge] < n) ? childA[merge] : n + newIndex[childA[merge] - n];
+            int b = (childB[merge] < n) ? childB[merge] : n + newIndex[childB[merge] - n];
+            this.childA[i] = Math.min (a, b);
+            this.childB[i] = Math.max (a, b);
+            this.distance[i] = distance[merge];
+            size[i] = getSize (a) + getSize (b);
+        }
+        layoutLeaves ();
+    }
+
+    // a parent always has a bigger id than its children, so walking down from the top id places
+    // every root first, and every child inside the range of its parent, without any recursion
+    private void layoutLeaves () {
+        int m = childA.length;
+        leafStart = new int[n + m];
+        Arrays.fill (leafStart, -1);
+        leafOrder = new int[n];
+        int next = 0;
+        for (int id = n + m - 1; id >= 0; --id) {
+            if (leafStart[id] < 0) {
+                leafStart[id] = next;
+                next += getSize (id);
+            }
+            if (id < n) {
+                leafOrder[leafStart[id]] = id;
+            } else {
+                int a = childA[id - n];
+                leafStart[a] = leafStart[id];
+                leafStart[childB[id - n]] = leafStart[id] + getSize (a);
+            }
+        }
+    }
+
+    public int getN () {
+        return n;
+    }
+
+    public int getMergeCount () {
+        return childA.length;
+    }
+
+    public int getChildA (int merge) {
+        return childA[merge];
+    }
+
+    public int getChildB (int merge) {
+        return childB[merge];
+    }
+
+    public double getDistance (int merge) {
+        return distance[merge];
+    }
+
+    // the number of samples in a cluster, by id
+    public int getSize (int id) {
+        return (id < n) ? 1 : size[id - n];
+    }
+
+    // the samples in a cluster, by id, as a read-only view into the leaf order (no copying)
+    public IntBuffer getMembers (int id) {
+        return IntBuffer.wrap (leafOrder, leafStart[id], getSize (id)).slice ().asReadOnlyBuffer ();
+    }
+
+    // the range of positions in the leaf order that hold the members of a cluster
+    public int getMembersStart (int id) {
+        return leafStart[id];
+    }
+
+    public int getMembersEnd (int id) {
+        return leafStart[id] + getSize (id);
+    }
+
+    public int getLeaf (int position) {
+        return leafOrder[position];
+    }
+
+    // the (n - 1) x 4 linkage matrix, flattened row by row as (a, b, distance, size)
+    public double[] toLinkage () {
+        int m = childA.length;
+        double[] linkage = new double[m * 4];
+        for (int i = 0, offset = 0; i < m; ++i, offset += 4) {
+            linkage[offset] = childA[i];
+            linkage[offset + 1] = childB[i];
+            linkage[offset + 2] = distance[i];
+            linkage[offset + 3] = size[i];
+        }
+        return linkage;
+    }
+
+    private static int find (int[] parent, int i) {
+        while (parent[i] != i) {
+            // path halving
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // apply merges [from, to) to the union-find over the samples, 'root' holds a sample from each
+    // cluster id so that later merges can find the sets their children ended up in
+    private void applyMerges (int[] parent, int[] root, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            int a = find (parent, (childA[i] < n) ? childA[i] : root[childA[i] - n]);
+            int b = find (parent, (childB[i] < n) ? childB[i] : root[childB[i] - n]);
+            parent[a] = b;
+            root[i] = b;
+        }
+    }
+
+    // number the sets in the union-find 0, 1, 2... in order of their first sample
+    private int[] label (int[] parent) {
+        int[] labels = new int[n];
+        int[] labelOfRoot = new int[n];
+        Arrays.fill (labelOfRoot, -1);
+        int count = 0;
+        for (int i = 0; i < n; ++i) {
+            int root = find (parent, i);
+            if (labelOfRoot[root] < 0) {
+                labelOfRoot[root] = count++;
+            }
+            labels[i] = labelOfRoot[root];
+        }
+        return labels;
+    }
+
+    private int[] makeParent () {
+        int[] parent = new int[n];
+        for (int i = 0; i < n; ++i) {
+            parent[i] = i;
+        }
+        return parent;
+    }
+
+    // the cluster label of every sample, with the tree cut so there are 'clusterCount' clusters
+    public int[] cutAtCount (int clusterCount) {
+        return cutAtCounts (clusterCount)[0];
+    }
+
+    // the cluster label of every sample, with the tree cut where the merge distance goes over the
+    // threshold
+    public int[] cutAtDistance (double threshold) {
+        int m = 0;
+        while ((m < childA.length) && (distance[m] <= threshold)) {
+            ++m;
+        }
+        return cutAtCount (n - m);
+    }
+
+    // several cuts from one pass over the merges, each cut only applies the merges since the last
+    // one (so they are done from the most clusters to the fewest), and then labels the samples
+    public int[][] cutAtCounts (int... clusterCounts) {
+        Integer[] order = new Integer[clusterCounts.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort (order, Comparator.comparingInt (i -> -clusterCounts[i]));
+
+        int[] parent = makeParent ();
+        int[] root = new int[childA.length];
+        int[][] cuts = new int[clusterCounts.length][];
+        int applied = 0;
+        for (int i : order) {
+            int merges = Math.max (0, Math.min (childA.length, n - clusterCounts[i]));
+            applyMerges (parent, root, applied, merges);
+            applied = merges;
+            cuts[i] = label (parent);
+        }
+        return cuts;
+    }
+}
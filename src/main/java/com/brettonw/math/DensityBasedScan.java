@@ -3,9 +3,7 @@ package com.brettonw.math;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 // https://en.wikipedia.org/wiki/DBSCAN
 public class DensityBasedScan extends ClusterAlgorithm {
@@ -16,32 +14,149 @@ public class DensityBasedScan extends ClusterAlgorithm {
     private static final int UNTOUCHED = -1;
     private static final int NOISE = -2;
 
+    private double range;
+    private int minPts;
     private int clusterCount;
     private int[] assign;
 
-    public DensityBasedScan (DataSet dataSet, double range, int minPts) {
+    // neighborhoods from a previous fit, and the range they were gathered with
+    private boolean cacheNeighborhoods;
+    private int[][] neighborhoods;
+    private double neighborhoodsRange;
+
+    public DensityBasedScan (DataSet dataSet) {
         super (dataSet);
+        cacheNeighborhoods = false;
+        clusterCount = 0;
+    }
+
+    public DensityBasedScan (DataSet dataSet, double range, int minPts) {
+        this (dataSet);
+        setRange (range).setMinPts (minPts).fit ();
+    }
+
+    public DensityBasedScan setRange (double range) {
+        this.range = range;
+        return this;
+    }
+
+    public DensityBasedScan setMinPts (int minPts) {
+        this.minPts = minPts;
+        return this;
+    }
+
+    // restore the result of an earlier fit (e.g. from a snapshot) over the same data set, instead
+    // of fitting again. negative labels are noise
+    public DensityBasedScan setLabels (int[] labels) {
+        int n = dataSet.getN ();
+        assign = new int[n];
+        clusterCount = FIRST_CLUSTER;
+        for (int i = 0; i < n; ++i) {
+            assign[i] = (labels[i] < 0) ? NOISE : labels[i];
+            clusterCount = Math.max (clusterCount, assign[i] + 1);
+        }
+        indexClusters (assign, clusterCount);
+        return this;
+    }
+
+    // keep the neighborhood of every point from a fit, so a later fit with a different minPts,
+    // or a smaller range, doesn't have to issue any range searches at all. this costs memory
+    // proportional to the total size of the neighborhoods
+    public DensityBasedScan setCacheNeighborhoods (boolean cacheNeighborhoods) {
+        this.cacheNeighborhoods = cacheNeighborhoods;
+        if (! cacheNeighborhoods) {
+            neighborhoods = null;
+        }
+        return this;
+    }
+
+    @Override
+    public DensityBasedScan setDataSet (DataSet dataSet) {
+        super.setDataSet (dataSet);
+        neighborhoods = null;
+        return this;
+    }
+
+    @Override
+    public DensityBasedScan fit () {
+        int n = dataSet.getN ();
+
+        // start collecting neighborhoods if we are caching and don't have a usable set already
+        if (cacheNeighborhoods && ((neighborhoods == null) || (range > neighborhoodsRange))) {
+            neighborhoods = new int[n][];
+            neighborhoodsRange = range;
+        }
 
         // initialize the clustering engine
-        assign = new int[dataSet.getN ()];
+        long start = (listener != null) ? System.nanoTime () : 0;
+        rangeQueryCount = 0;
+        assign = new int[n];
         Arrays.fill (assign, UNTOUCHED);
         clusterCount = FIRST_CLUSTER;
 
         // scan over all the points...
-        for (int i = 0, n = dataSet.getN (); i < n; ++i) {
+        for (int i = 0; i < n; ++i) {
             if (assign[i] == UNTOUCHED) {
                 // get the neighbors
-                Tuple tuple = dataSet.get (i);
-                int[] neighbors = dataSet.rangeSearch (tuple, range);
-                if (neighbors.length < minPts) {
+                int[] neighbors = getNeighbors (i);
+                if (count (neighbors) < minPts) {
                     assign[i] = NOISE;
                 } else {
                     assign[i] = clusterCount;
-                    expandCluster (neighbors, range, minPts);
+                    expandCluster (neighbors);
                     ++clusterCount;
                 }
             }
         }
+        indexClusters (assign, clusterCount);
+        if (listener != null) {
+            listener.phase (this, "scan", System.nanoTime () - start);
+            listener.rangeQueries (this, rangeQueryCount);
+        }
+        return this;
+    }
+
+    // the range searches issued in the current fit, a cached neighborhood doesn't count
+    private long rangeQueryCount;
+
+    private int[] getNeighbors (int i) {
+        if (neighborhoods == null) {
+            ++rangeQueryCount;
+            return dataSet.rangeSearch (i, range);
+        }
+
+        // gather the neighborhood the first time we see this point
+        if (neighborhoods[i] == null) {
+            ++rangeQueryCount;
+            neighborhoods[i] = dataSet.rangeSearch (i, neighborhoodsRange);
+        }
+        if (range == neighborhoodsRange) {
+            return neighborhoods[i];
+        }
+
+        // the cache was gathered with a larger range, so filter it down
+        double rangeSq = range * range;
+        int[] cached = neighborhoods[i];
+        int[] neighbors = new int[cached.length];
+        int count = 0;
+        for (int neighbor : cached) {
+            if (dataSet.deltaNormSq (i, neighbor) < rangeSq) {
+                neighbors[count++] = neighbor;
+            }
+        }
+        return Arrays.copyOf (neighbors, count);
+    }
+
+    // the number of samples in a neighborhood, where a weighted tuple counts as its weight
+    private double count (int[] neighbors) {
+        if (! dataSet.isWeighted ()) {
+            return neighbors.length;
+        }
+        double count = 0;
+        for (int neighbor : neighbors) {
+            count += dataSet.getWeight (neighbor);
+        }
+        return count;
     }
 
     /*
@@ -55,16 +170,15 @@ public class DensityBasedScan extends ClusterAlgorithm {
     }
     */
 
-    private void expandCluster (int[] neighbors, double range, int minPts) {
+    private void expandCluster (int[] neighbors) {
         for (int i : neighbors) {
             if (assign[i] == UNTOUCHED) {
                 assign[i] = clusterCount;
 
                 // get the neighbors
-                Tuple tuple = dataSet.get (i);
-                int[] neighborNeighbors = dataSet.rangeSearch (tuple, range);
-                if (neighborNeighbors.length > minPts) {
-                    expandCluster (neighborNeighbors, range, minPts);
+                int[] neighborNeighbors = getNeighbors (i);
+                if (count (neighborNeighbors) > minPts) {
+                    expandCluster (neighborNeighbors);
                 }
             }
         }
@@ -73,21 +187,6 @@ public class DensityBasedScan extends ClusterAlgorithm {
     public int getClusterCount () {
         return clusterCount;
     }
-
-    @Override
-    public Tuple[] getCluster (int i) {
-        // naive scan of the full list
-        List<Tuple> list = new ArrayList<> ();
-
-        // an exhaustive search over all the tuples to find tuples in the cluster
-        for (int j = 0, n = dataSet.getN (); j < n; ++j) {
-            if (assign[j] == i) {
-                list.add (dataSet.get (j));
-            }
-        }
-
-        return list.toArray (new Tuple[list.size ()]);
-    }
 }
 
 
@@ -0,0 +1,312 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// a linear map from k dimensions down to d, for data whose intrinsic dimensionality is far below
+// its k. the grid of SpatiallyIndexed, and every distance computation, gets worse with each
+// dimension, so they work on the reduced tuples instead
+// https://en.wikipedia.org/wiki/Random_projection
+// https://en.wikipedia.org/wiki/Principal_component_analysis
+public class DimensionReduction {
+    private static final Logger log = LogManager.getLogger (DimensionReduction.class);
+
+    // a sparse random projection (Achlioptas), which needs no pass over the data and keeps the
+    // distances between tuples approximately, with high probability. or the principal components,
+    // found with a few parallel passes over the data, which are orthonormal so a distance is never
+    // longer after the projection than before it
+    public static final int REDUCE_BY_RANDOM_PROJECTION = 0;
+    public static final int REDUCE_BY_PCA = 1;
+
+    // the extra vectors the principal components are searched for with, which makes the search
+    // converge in a few passes unless the eigenvalues are very close together
+    private static final int OVERSAMPLING = 8;
+
+    private int method;
+    private int d;
+    private int iterations;
+    private long seed;
+
+    private int k;
+    private double[] mean;          // k, subtracted before the projection (zero for a random one)
+    private double[] components;    // d k-valued rows, flattened
+    private double explainedVariance;
+
+    public DimensionReduction (int method, int d) {
+        this.method = method;
+        this.d = d;
+        iterations = 4;
+        seed = System.currentTimeMillis ();
+    }
+
+    // the number of extra passes over the data the principal components are refined with
+    public DimensionReduction setIterations (int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    public DimensionReduction setSeed (long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DimensionReduction fit (DataSet dataSet) {
+        k = dataSet.getK ();
+        if ((d < 1) || (d > k)) {
+            throw new IllegalArgumentException ("Reduced dimensions must be in 1.." + k + " (" + d + ")");
+        }
+        mean = new double[k];
+        components = new double[d * k];
+        Random random = new Random (seed);
+        if (method == REDUCE_BY_PCA) {
+            fitPrincipalComponents (dataSet, random);
+        } else {
+            // entries are +1 or -1 with probability 1/6 each, and 0 otherwise, scaled so the
+            // expected squared length of a projected tuple is its squared length
+            double scale = Math.sqrt (3.0 / d);
+            for (int i = 0, end = d * k; i < end; ++i) {
+                int draw = random.nextInt (6);
+                components[i] = (draw == 0) ? scale : ((draw == 1) ? -scale : 0);
+            }
+            explainedVariance = Double.NaN;
+        }
+        log.info ("K: " + k + " -> D: " + d + ((method == REDUCE_BY_PCA) ? (", explained variance: " + explainedVariance) : ", random projection"));
+        return this;
+    }
+
+    // a sum over every tuple of width values, in chunks that each have their own sums, merged at
+    // the end
+    private interface Accumulator {
+        void accumulate (double[] values, double[] sums);
+    }
+
+    private double[] sum (DataSet dataSet, int width, Accumulator accumulator) {
+        int n = dataSet.getN ();
+        int chunkCount = Utility.chunkCount (n);
+        double[][] chunkSums = new double[chunkCount][];
+        Utility.chunks (chunkCount).forEach (chunk -> {
+            double[] sums = new double[width];
+            for (int i = Utility.chunkStart (n, chunk, chunkCount), end = Utility.chunkStart (n, chunk + 1, chunkCount); i < end; ++i) {
+                accumulator.accumulate (dataSet.get (i).getValues (), sums);
+            }
+            chunkSums[chunk] = sums;
+        });
+        double[] sums = new double[width];
+        for (double[] chunk : chunkSums) {
+            for (int j = 0; j < width; ++j) {
+                sums[j] += chunk[j];
+            }
+        }
+        return sums;
+    }
+
+    // a randomized subspace iteration (Halko, Martinsson, and Tropp). the covariance is never
+    // formed - each pass over the data multiplies it into l = d + OVERSAMPLING vectors as the sum
+    // of (x - mean) ((x - mean) . q), so a chunk only holds l * k sums, and the tuples are centered
+    // on a mean from an earlier pass, so nothing cancels for data far from the origin. the top d
+    // eigenvectors of the small l x l projection of the covariance onto the final vectors are the
+    // components
+    private void fitPrincipalComponents (DataSet dataSet, Random random) {
+        int n = dataSet.getN ();
+        int l = Math.min (k, d + OVERSAMPLING);
+
+        // the mean
+        double[] sums = sum (dataSet, k, (values, partial) -> {
+            for (int j = 0; j < k; ++j) {
+                partial[j] += values[j];
+            }
+        });
+        for (int j = 0; j < k; ++j) {
+            mean[j] = sums[j] / n;
+        }
+
+        // the total variance, for the share the components explain
+        double trace = sum (dataSet, 1, (values, partial) -> {
+            for (int j = 0; j < k; ++j) {
+                double centered = values[j] - mean[j];
+                partial[0] += centered * centered;
+            }
+        })[0] / n;
+
+        // start from random vectors, and each pass multiplies them by the covariance and
+        // orthonormalizes them, so they converge on the span of the largest eigenvectors
+        double[] basis = new double[l * k];
+        for (int i = 0, end = l * k; i < end; ++i) {
+            basis[i] = random.nextGaussian ();
+        }
+        orthonormalize (basis, l);
+        double[] product = multiply (dataSet, basis, l);
+        for (int iteration = 0; iteration < iterations; ++iteration) {
+            System.arraycopy (product, 0, basis, 0, l * k);
+            orthonormalize (basis, l);
+            product = multiply (dataSet, basis, l);
+        }
+
+        // the covariance projected onto the basis, and its eigenvectors in order of decreasing
+        // eigenvalue
+        double[] projected = new double[l * l];
+        for (int r = 0; r < l; ++r) {
+            for (int s = 0; s < l; ++s) {
+                double acc = 0;
+                for (int j = 0; j < k; ++j) {
+                    acc += basis[(r * k) + j] * product[(s * k) + j];
+                }
+                projected[(r * l) + s] = acc;
+            }
+        }
+        for (int r = 0; r < l; ++r) {
+            for (int s = 0; s < r; ++s) {
+                projected[(r * l) + s] = projected[(s * l) + r] = (projected[(r * l) + s] + projected[(s * l) + r]) / 2;
+            }
+        }
+        double[] vectors = new double[l * l];
+        eigen (projected, vectors, l);
+        Integer[] order = new Integer[l];
+        for (int r = 0; r < l; ++r) {
+            order[r] = r;
+        }
+        Arrays.sort (order, (a, b) -> Double.compare (projected[(b * l) + b], projected[(a * l) + a]));
+
+        // the components are the basis rotated by those eigenvectors, the variance along each
+        // one is its eigenvalue
+        double explained = 0;
+        for (int r = 0; r < d; ++r) {
+            int column = order[r];
+            for (int s = 0; s < l; ++s) {
+                double weight = vectors[(s * l) + column];
+                for (int j = 0; j < k; ++j) {
+                    components[(r * k) + j] += weight * basis[(s * k) + j];
+                }
+            }
+            explained += projected[(column * l) + column];
+        }
+        explainedVariance = (trace > 0) ? (explained / trace) : 1;
+    }
+
+    // rows of the covariance times the rows of basis, in one pass over the data
+    private double[] multiply (DataSet dataSet, double[] basis, int rows) {
+        double[] product = sum (dataSet, rows * k, (values, partial) -> {
+            for (int r = 0; r < rows; ++r) {
+                double dot = 0;
+                for (int j = 0, offset = r * k; j < k; ++j) {
+                    dot += (values[j] - mean[j]) * basis[offset + j];
+                }
+                for (int j = 0, offset = r * k; j < k; ++j) {
+                    partial[offset + j] += (values[j] - mean[j]) * dot;
+                }
+            }
+        });
+        int n = dataSet.getN ();
+        for (int i = 0, end = rows * k; i < end; ++i) {
+            product[i] /= n;
+        }
+        return product;
+    }
+
+    // the eigenvalues of a small symmetric matrix, left on its diagonal, and its eigenvectors, as
+    // the columns of vectors, by cyclic jacobi rotations
+    private static void eigen (double[] a, double[] vectors, int size) {
+        for (int i = 0; i < size; ++i) {
+            vectors[(i * size) + i] = 1;
+        }
+        for (int sweep = 0; sweep < 100; ++sweep) {
+            double off = 0, diagonal = 0;
+            for (int p = 0; p < size; ++p) {
+                diagonal += a[(p * size) + p] * a[(p * size) + p];
+                for (int q = p + 1; q < size; ++q) {
+                    off += a[(p * size) + q] * a[(p * size) + q];
+                }
+            }
+            if (off <= (diagonal * 1.0e-30)) {
+                break;
+            }
+            for (int p = 0; p < size; ++p) {
+                for (int q = p + 1; q < size; ++q) {
+                    double apq = a[(p * size) + q];
+                    if (apq == 0) {
+                        continue;
+                    }
+
+                    // the rotation that zeroes a[p][q], applied to the columns and rows of a, and
+                    // to the columns of vectors
+                    double theta = (a[(q * size) + q] - a[(p * size) + p]) / (2 * apq);
+                    double t = ((theta >= 0) ? 1 : -1) / (Math.abs (theta) + Math.sqrt ((theta * theta) + 1));
+                    double c = 1 / Math.sqrt ((t * t) + 1);
+                    double s = t * c;
+                    for (int r = 0; r < size; ++r) {
+                        double arp = a[(r * size) + p], arq = a[(r * size) + q];
+                        a[(r * size) + p] = (c * arp) - (s * arq);
+                        a[(r * size) + q] = (s * arp) + (c * arq);
+                    }
+                    for (int r = 0; r < size; ++r) {
+                        double apr = a[(p * size) + r], aqr = a[(q * size) + r];
+                        a[(p * size) + r] = (c * apr) - (s * aqr);
+                        a[(q * size) + r] = (s * apr) + (c * aqr);
+                    }
+                    for (int r = 0; r < size; ++r) {
+                        double vrp = vectors[(r * size) + p], vrq = vectors[(r * size) + q];
+                        vectors[(r * size) + p] = (c * vrp) - (s * vrq);
+                        vectors[(r * size) + q] = (s * vrp) + (c * vrq);
+                    }
+                }
+            }
+        }
+    }
+
+    // modified gram-schmidt on the first count rows. a row that collapses (the data has fewer
+    // dimensions than that) is left as zeros
+    private void orthonormalize (double[] rows, int count) {
+        for (int r = 0; r < count; ++r) {
+            for (int s = 0; s < r; ++s) {
+                double dot = 0;
+                for (int j = 0; j < k; ++j) {
+                    dot += rows[(r * k) + j] * rows[(s * k) + j];
+                }
+                for (int j = 0; j < k; ++j) {
+                    rows[(r * k) + j] -= dot * rows[(s * k) + j];
+                }
+            }
+            double normSq = 0;
+            for (int j = 0; j < k; ++j) {
+                normSq += rows[(r * k) + j] * rows[(r * k) + j];
+            }
+            double scale = (normSq > 1.0e-24) ? (1.0 / Math.sqrt (normSq)) : 0;
+            for (int j = 0; j < k; ++j) {
+                rows[(r * k) + j] *= scale;
+            }
+        }
+    }
+
+    public int getMethod () { return method; }
+    public int getK () { return k; }
+    public int getD () { return d; }
+
+    // the share of the total variance the principal components keep (NaN for a random projection)
+    public double getExplainedVariance () {
+        return explainedVariance;
+    }
+
+    public Tuple project (Tuple tuple) {
+        double[] values = tuple.getValues ();
+        double[] reduced = new double[d];
+        for (int r = 0; r < d; ++r) {
+            double acc = 0;
+            for (int j = 0, offset = r * k; j < k; ++j) {
+                acc += (values[j] - mean[j]) * components[offset + j];
+            }
+            reduced[r] = acc;
+        }
+        return new Tuple (reduced);
+    }
+
+    // every tuple of a data set, projected in parallel
+    public Tuple[] project (DataSet dataSet) {
+        Tuple[] reduced = new Tuple[dataSet.getN ()];
+        IntStream.range (0, reduced.length).parallel ().forEach (i -> reduced[i] = project (dataSet.get (i)));
+        return reduced;
+    }
+}
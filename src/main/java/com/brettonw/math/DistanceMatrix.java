@@ -0,0 +1,281 @@
+package com.brettonw.math;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+// a symmetric n x n distance matrix, stored as the condensed upper triangle (n (n - 1) / 2 values,
+// row by row, with no diagonal). indices are 64-bit, and the storage is split into chunks so the
+// matrix isn't limited by the maximum size of a java array or buffer
+public abstract class DistanceMatrix {
+    protected static final int CHUNK_BITS = 27;
+    protected static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    protected static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // tiling for the distance computation, assuming a typical 256KB L2
+    private static final int L2_BYTES = 256 * 1024;
+    private static final int MIN_TILE_SIZE = 16;
+    private static final int MAX_TILE_SIZE = 1024;
+
+    protected final int n;
+    protected final long size;
+
+    protected DistanceMatrix (int n) {
+        this.n = n;
+        size = ((long) n * (n - 1)) / 2;
+    }
+
+    public int getN () {
+        return n;
+    }
+
+    public long getSize () {
+        return size;
+    }
+
+    // the position of the pair (i, j) in the condensed triangle, the pair is unordered and i != j
+    public static long index (int n, int i, int j) {
+        if (i > j) {
+            int swap = i; i = j; j = swap;
+        }
+        return ((long) i * n) - (((long) i * (i + 1)) / 2) + (j - i - 1);
+    }
+
+    public double get (int i, int j) {
+        return get (index (n, i, j));
+    }
+
+    public void set (int i, int j, double value) {
+        set (index (n, i, j), value);
+    }
+
+    public abstract double get (long index);
+    public abstract void set (long index, double value);
+
+    // copy all of the values from another matrix of the same size, a chunk at a time in parallel
+    public DistanceMatrix copy (DistanceMatrix from) {
+        IntStream.range (0, chunkCount ()).parallel ().forEach (chunk -> copyChunk (from, chunk));
+        return this;
+    }
+
+    // one value at a time, subclasses copy a chunk in bulk when the other matrix stores it the
+    // same way
+    protected void copyChunk (DistanceMatrix from, int chunk) {
+        for (long i = (long) chunk << CHUNK_BITS, end = i + chunkSize (chunk); i < end; ++i) {
+            set (i, from.get (i));
+        }
+    }
+
+    // the euclidean distances between every pair of tuples in a data set. the work is blocked into
+    // square tiles of points small enough that a row tile and a column tile fit in L2 together, and
+    // each row of tiles is a separate fork-join task (rows near the top have more tiles, so work
+    // stealing takes care of the imbalance). the coordinates are copied into one flat array first,
+    // so a tile is a contiguous run of memory instead of a scatter of Tuple objects
+    public DistanceMatrix computeDistances (DataSet dataSet) {
+        int k = dataSet.getK ();
+        double[] values = new double[n * k];
+        for (int i = 0; i < n; ++i) {
+            System.arraycopy (dataSet.get (i).getValues (), 0, values, i * k, k);
+        }
+
+        int tileSize = Math.max (MIN_TILE_SIZE, Math.min (MAX_TILE_SIZE, L2_BYTES / (2 * k * Double.BYTES)));
+        int tileCount = (n + tileSize - 1) / tileSize;
+        List<RecursiveAction> tasks = new ArrayList<> (tileCount);
+        for (int tileRow = 0; tileRow < tileCount; ++tileRow) {
+            int rowStart = tileRow * tileSize;
+            int rowEnd = Math.min (n, rowStart + tileSize);
+            tasks.add (new RecursiveAction () {
+                @Override
+                protected void compute () {
+                    for (int colStart = rowStart; colStart < n; colStart += tileSize) {
+                        computeTile (values, k, rowStart, rowEnd, colStart, Math.min (n, colStart + tileSize));
+                    }
+                }
+            });
+        }
+        ForkJoinTask.invokeAll (tasks);
+        return this;
+    }
+
+    private void computeTile (double[] values, int k, int rowStart, int rowEnd, int colStart, int colEnd) {
+        for (int i = rowStart; i < rowEnd; ++i) {
+            int iOffset = i * k;
+            int jStart = Math.max (colStart, i + 1);
+            long index = (jStart < colEnd) ? index (n, i, jStart) : 0;
+            for (int j = jStart; j < colEnd; ++j) {
+                int jOffset = j * k;
+                double acc = 0;
+                for (int l = 0; l < k; ++l) {
+                    double delta = values[iOffset + l] - values[jOffset + l];
+                    acc += delta * delta;
+                }
+                set (index++, Math.sqrt (acc));
+            }
+        }
+    }
+
+    protected int chunkCount () {
+        return (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+    }
+
+    protected int chunkSize (int chunk) {
+        return (int) Math.min (CHUNK_SIZE, size - ((long) chunk << CHUNK_BITS));
+    }
+
+    public static DistanceMatrix onHeap (int n, boolean singlePrecision) {
+        return singlePrecision ? new FloatArrays (n) : new DoubleArrays (n);
+    }
+
+    // direct buffers live outside the java heap, so a large matrix doesn't need a huge -Xmx
+    public static DistanceMatrix offHeap (int n, boolean singlePrecision) {
+        DistanceMatrix.Buffers buffers = new DistanceMatrix.Buffers (n, singlePrecision);
+        for (int i = 0, end = buffers.chunkCount (); i < end; ++i) {
+            buffers.chunks[i] = ByteBuffer.allocateDirect (buffers.chunkSize (i) * buffers.width).order (ByteOrder.nativeOrder ());
+        }
+        return buffers;
+    }
+
+    // a memory-mapped file, which lets the operating system page a matrix that is larger than
+    // physical memory
+    public static DistanceMatrix mapped (int n, boolean singlePrecision, Path path) {
+        DistanceMatrix.Buffers buffers = new DistanceMatrix.Buffers (n, singlePrecision);
+        try (FileChannel channel = FileChannel.open (path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (int i = 0, end = buffers.chunkCount (); i < end; ++i) {
+                long chunkBytes = (long) buffers.chunkSize (i) * buffers.width;
+                buffers.chunks[i] = channel.map (FileChannel.MapMode.READ_WRITE, position, chunkBytes).order (ByteOrder.nativeOrder ());
+                position += chunkBytes;
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException (exception);
+        }
+        return buffers;
+    }
+
+    public static DistanceMatrix mapped (int n, boolean singlePrecision) {
+        try {
+            Path path = Files.createTempFile ("distances", ".bin");
+            path.toFile ().deleteOnExit ();
+            return mapped (n, singlePrecision, path);
+        } catch (IOException exception) {
+            throw new UncheckedIOException (exception);
+        }
+    }
+
+    private static class DoubleArrays extends DistanceMatrix {
+        private double[][] chunks;
+
+        public DoubleArrays (int n) {
+            super (n);
+            chunks = new double[chunkCount ()][];
+            for (int i = 0; i < chunks.length; ++i) {
+                chunks[i] = new double[chunkSize (i)];
+            }
+        }
+
+        @Override
+        public double get (long index) {
+            return chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+        }
+
+        @Override
+        public void set (long index, double value) {
+            chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)] = value;
+        }
+
+        @Override
+        protected void copyChunk (DistanceMatrix from, int chunk) {
+            if (from instanceof DoubleArrays) {
+                System.arraycopy (((DoubleArrays) from).chunks[chunk], 0, chunks[chunk], 0, chunks[chunk].length);
+            } else {
+                super.copyChunk (from, chunk);
+            }
+        }
+    }
+
+    private static class FloatArrays extends DistanceMatrix {
+        private float[][] chunks;
+
+        public FloatArrays (int n) {
+            super (n);
+            chunks = new float[chunkCount ()][];
+            for (int i = 0; i < chunks.length; ++i) {
+                chunks[i] = new float[chunkSize (i)];
+            }
+        }
+
+        @Override
+        public double get (long index) {
+            return chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+        }
+
+        @Override
+        public void set (long index, double value) {
+            chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)] = (float) value;
+        }
+
+        @Override
+        protected void copyChunk (DistanceMatrix from, int chunk) {
+            if (from instanceof FloatArrays) {
+                System.arraycopy (((FloatArrays) from).chunks[chunk], 0, chunks[chunk], 0, chunks[chunk].length);
+            } else {
+                super.copyChunk (from, chunk);
+            }
+        }
+    }
+
+    private static class Buffers extends DistanceMatrix {
+        private ByteBuffer[] chunks;
+        private boolean singlePrecision;
+        private int width;
+
+        public Buffers (int n, boolean singlePrecision) {
+            super (n);
+            this.singlePrecision = singlePrecision;
+            width = singlePrecision ? Float.BYTES : Double.BYTES;
+            chunks = new ByteBuffer[chunkCount ()];
+        }
+
+        @Override
+        public double get (long index) {
+            ByteBuffer chunk = chunks[(int) (index >>> CHUNK_BITS)];
+            int offset = (int) (index & CHUNK_MASK) * width;
+            return singlePrecision ? chunk.getFloat (offset) : chunk.getDouble (offset);
+        }
+
+        @Override
+        public void set (long index, double value) {
+            ByteBuffer chunk = chunks[(int) (index >>> CHUNK_BITS)];
+            int offset = (int) (index & CHUNK_MASK) * width;
+            if (singlePrecision) {
+                chunk.putFloat (offset, (float) value);
+            } else {
+                chunk.putDouble (offset, value);
+            }
+        }
+
+        // the bytes are copied through duplicates, so neither buffer's position changes
+        @Override
+        protected void copyChunk (DistanceMatrix from, int chunk) {
+            if ((from instanceof Buffers) && (((Buffers) from).singlePrecision == singlePrecision)) {
+                ByteBuffer source = ((Buffers) from).chunks[chunk].duplicate ();
+                source.clear ();
+                ByteBuffer target = chunks[chunk].duplicate ();
+                target.clear ();
+                target.put (source);
+            } else {
+                super.copyChunk (from, chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// a spatially indexed data set that takes inserts while it is being searched. new tuples go into a
+// small delta that is searched exhaustively, and once the delta is big enough it is merged with the
+// indexed tuples into a new index in the background. the indexed tuples, the delta, and the bounds
+// are published together as one immutable state, so a search never blocks and never sees a
+// partial insert or merge. tuples are identified by the order they were added, and that id never
+// changes, so an id from any search is good for get (and getWeight) at any later time
+public class DynamicSpatiallyIndexed extends DataSet {
+    private static final Logger log = LogManager.getLogger (DynamicSpatiallyIndexed.class);
+
+    private static class State {
+        final Tuple[] tuples;           // by id, only the first n are valid
+        final double[] weights;         // by id like the tuples, or null if every tuple counts once
+        final int n;
+        final Bound[] bounds;
+        final SpatiallyIndexed base;    // the index over ids [0, baseN), or null if there is none
+        final int[] baseIds;            // base position -> id
+        final int baseN;
+
+        State (Tuple[] tuples, double[] weights, int n, Bound[] bounds, SpatiallyIndexed base, int[] baseIds, int baseN) {
+            this.tuples = tuples;
+            this.weights = weights;
+            this.n = n;
+            this.bounds = bounds;
+            this.base = base;
+            this.baseIds = baseIds;
+            this.baseN = baseN;
+        }
+    }
+
+    private volatile State state;
+    private volatile boolean merging;
+    private final Object mergeLock = new Object ();
+    private int mergeThreshold;
+
+    public DynamicSpatiallyIndexed (Tuple... tuples) {
+        mergeThreshold = 4096;
+        setTuples (tuples);
+    }
+
+    // the size of the delta that starts a background merge. a merge rebuilds the whole index, so a
+    // bigger delta means fewer rebuilds but more exhaustive scanning in every search
+    public DynamicSpatiallyIndexed setMergeThreshold (int mergeThreshold) {
+        this.mergeThreshold = mergeThreshold;
+        return this;
+    }
+
+    // replace the contents, the tuples are indexed right away and get ids in the order given, and
+    // any weights are dropped. the locks are taken in the same order as a merge takes them
+    @Override
+    public void setTuples (Tuple[] tuples, Bound[] bounds) {
+        synchronized (mergeLock) {
+            Tuple[] given = tuples.clone ();
+            SpatiallyIndexed base = (given.length > 0) ? new SpatiallyIndexed (tuples.clone ()) : null;
+            synchronized (this) {
+                super.setTuples (given, bounds);
+                state = (base != null) ?
+                        new State (given, null, n, copy (this.bounds), base, base.getPermutation (), n) :
+                        new State (given, null, 0, null, null, null, 0);
+            }
+        }
+    }
+
+    // the weights are published with the tuples, and added ones grow with them
+    @Override
+    public DynamicSpatiallyIndexed setWeights (double... weights) {
+        synchronized (this) {
+            State current = state;
+            if ((weights != null) && (weights.length != current.n)) {
+                throw new IllegalArgumentException ("Expected " + current.n + " weights, got " + weights.length);
+            }
+            double[] copied = (weights != null) ? Arrays.copyOf (weights, current.tuples.length) : null;
+            state = new State (current.tuples, copied, current.n, current.bounds, current.base, current.baseIds, current.baseN);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isWeighted () {
+        return state.weights != null;
+    }
+
+    @Override
+    public double getWeight (int i) {
+        double[] weights = state.weights;
+        return (weights != null) ? weights[i] : 1;
+    }
+
+    private static Bound[] copy (Bound[] bounds) {
+        Bound[] result = new Bound[bounds.length];
+        for (int i = 0; i < bounds.length; ++i) {
+            result[i] = new Bound ().accumulate (bounds[i]);
+        }
+        return result;
+    }
+
+    // add a tuple and return its id. this is cheap - the tuple goes into the delta - and it starts
+    // a background merge if the delta has grown past the threshold
+    public int add (Tuple tuple) {
+        return add (tuple, 1);
+    }
+
+    // the same, with a weight. the first weight other than 1 weights the data set, with every tuple
+    // before it counting once
+    public synchronized int add (Tuple tuple, double weight) {
+        State current = state;
+        int id = current.n;
+
+        // tuples past the end of the current state are never read, so the arrays only have to be
+        // copied when they are full
+        Tuple[] tuples = current.tuples;
+        double[] weights = current.weights;
+        if (id == tuples.length) {
+            tuples = Arrays.copyOf (tuples, Math.max (16, id * 2));
+            if (weights != null) {
+                weights = Arrays.copyOf (weights, tuples.length);
+            }
+        }
+        tuples[id] = tuple;
+        if ((weights == null) && (weight != 1)) {
+            weights = new double[tuples.length];
+            Arrays.fill (weights, 0, id, 1);
+        }
+        if (weights != null) {
+            weights[id] = weight;
+        }
+
+        Bound[] bounds;
+        if (current.bounds == null) {
+            k = tuple.getValues ().length;
+            bounds = new Bound[k];
+            for (int i = 0; i < k; ++i) {
+                bounds[i] = new Bound ();
+            }
+        } else {
+            bounds = copy (current.bounds);
+        }
+        Bound.accumulate (bounds, tuple);
+
+        n = id + 1;
+        state = new State (tuples, weights, n, bounds, current.base, current.baseIds, current.baseN);
+
+        if (((n - current.baseN) >= mergeThreshold) && (! merging)) {
+            merging = true;
+            CompletableFuture.runAsync (() -> {
+                try {
+                    merge ();
+                } catch (RuntimeException exception) {
+                    log.error ("Merge failed", exception);
+                } finally {
+                    merging = false;
+                }
+            });
+        }
+        return id;
+    }
+
+    // index everything added so far, in the calling thread. inserts carry on while the index is
+    // built, and anything added in the meantime stays in the delta of the new state
+    public DynamicSpatiallyIndexed merge () {
+        synchronized (mergeLock) {
+            State current = state;
+            if (current.n > current.baseN) {
+                long start = System.nanoTime ();
+                SpatiallyIndexed base = new SpatiallyIndexed (Arrays.copyOf (current.tuples, current.n));
+                synchronized (this) {
+                    State latest = state;
+                    state = new State (latest.tuples, latest.weights, latest.n, latest.bounds, base, base.getPermutation (), current.n);
+                }
+                if (listener != null) {
+                    listener.phase (this, "merge", System.nanoTime () - start);
+                }
+                log.debug ("Merged " + (current.n - current.baseN) + " tuples (N: " + current.n + ")");
+            }
+        }
+        return this;
+    }
+
+    // the number of tuples not yet in the index
+    public int getDeltaSize () {
+        State current = state;
+        return current.n - current.baseN;
+    }
+
+    @Override
+    public int[] rangeSearch (Tuple locus, double range) {
+        State current = state;
+        List<Integer> list = new ArrayList<> ();
+
+        // the indexed tuples, mapped back to their ids
+        int scanned = 0;
+        if (current.base != null) {
+            for (int i : current.base.rangeSearch (locus, range)) {
+                list.add (current.baseIds[i]);
+            }
+        }
+
+        // and an exhaustive scan of the delta
+        double rangeSq = range * range;
+        for (int i = current.baseN; i < current.n; ++i) {
+            ++scanned;
+            if (Tuple.deltaNormSq (current.tuples[i], locus) < rangeSq) {
+                list.add (i);
+            }
+        }
+
+        if (listener != null) {
+            listener.rangeQuery (this, 1, scanned, list.size ());
+        }
+        return Utility.IntegerListToIntArray (list);
+    }
+
+    @Override
+    public Tuple[] getTuples (int[] selection) {
+        Tuple[] tuples = state.tuples;
+        Tuple[] result = new Tuple[selection.length];
+        for (int i = 0, selectionLength = selection.length; i < selectionLength; ++i) {
+            result[i] = tuples[selection[i]];
+        }
+        return result;
+    }
+
+    @Override
+    public int getN () { return state.n; }
+
+    @Override
+    public Bound[] getBounds () { return state.bounds; }
+
+    @Override
+    public Tuple get (int i) { return state.tuples[i]; }
+}
@@ -0,0 +1,353 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// vector quantization for very large cluster counts, by splitting clusters recursively instead of
+// fitting all the centroids at once. every split is a small k-means over the samples of one
+// cluster, with branching (2 is bisecting) centroids, and the cluster with the largest squared
+// error is split first. the splits of each round are independent, so they run in parallel. the
+// splits form a tree, and a new point is assigned by walking down it to the nearest child at each
+// level, which is O(branching * log c) distance computations instead of O(c). that walk is
+// approximate - the nearest leaf isn't always under the nearest child - but a sample from the fit
+// walks to the cluster it was given
+// https://en.wikipedia.org/wiki/K-means_clustering (bisecting k-means)
+public class HierarchicalVectorQuantization extends ClusterAlgorithm {
+    private static final Logger log = LogManager.getLogger (HierarchicalVectorQuantization.class);
+
+    private int clusterCount;
+    private int branching;
+    private int iterations;
+    private long seed;
+
+    private static class Node {
+        double[] centroid;
+        int[] members;          // the samples under a leaf, only kept during the fit
+        double errorSq;         // the (weighted) sum of squared distances from the members
+        int firstChild = -1;
+        int childCount = 0;
+        int cluster = -1;       // the cluster of a leaf
+        boolean settled;        // a leaf that can't be split, including one with a single member
+    }
+
+    private List<Node> nodes;
+    private int leafCount;
+    private Tuple[] centroids;
+
+    public HierarchicalVectorQuantization (DataSet dataSet) {
+        super (dataSet);
+        clusterCount = 0;
+        branching = 2;
+        iterations = 20;
+        seed = System.currentTimeMillis ();
+    }
+
+    public HierarchicalVectorQuantization (DataSet dataSet, int clusterCount, int branching) {
+        this (dataSet);
+        setClusterCount (clusterCount).setBranching (branching).fit ();
+    }
+
+    public HierarchicalVectorQuantization setClusterCount (int clusterCount) {
+        this.clusterCount = clusterCount;
+        return this;
+    }
+
+    public HierarchicalVectorQuantization setBranching (int branching) {
+        this.branching = Math.max (2, branching);
+        return this;
+    }
+
+    // the most steps of any one split, it stops sooner when the assignments stop changing
+    public HierarchicalVectorQuantization setIterations (int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    public HierarchicalVectorQuantization setSeed (long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    @Override
+    public HierarchicalVectorQuantization fit () {
+        int n = dataSet.getN ();
+        long start = (listener != null) ? System.nanoTime () : 0;
+        log.info ("Start (" + clusterCount + " clusters, branching " + branching + ")");
+
+        // the root holds everything
+        nodes = new ArrayList<> ();
+        Node root = new Node ();
+        root.members = new int[n];
+        for (int i = 0; i < n; ++i) {
+            root.members[i] = i;
+        }
+        root.centroid = mean (root.members);
+        root.errorSq = errorSq (root.members, root.centroid);
+        root.settled = n < 2;
+        nodes.add (root);
+        leafCount = 1;
+
+        // split the leaves with the largest error, up to as many as there are leaves in each round
+        // so the tree grows about a level at a time
+        List<Integer> leaves = new ArrayList<> ();
+        leaves.add (0);
+        int round = 0;
+        while (leafCount < clusterCount) {
+            List<Integer> candidates = new ArrayList<> ();
+            for (int leaf : leaves) {
+                Node node = nodes.get (leaf);
+                if (! node.settled) {
+                    candidates.add (leaf);
+                }
+            }
+            if (candidates.isEmpty ()) {
+                break;
+            }
+            candidates.sort (Comparator.comparingDouble ((Integer leaf) -> nodes.get (leaf).errorSq).reversed ());
+
+            // each split adds up to branching - 1 leaves, the last one might be a smaller split, and
+            // a split never has more children than its leaf has members
+            int[] splitLeaves = new int[candidates.size ()];
+            int[] splitCounts = new int[candidates.size ()];
+            int splits = 0;
+            for (int remaining = clusterCount - leafCount; (splits < candidates.size ()) && (remaining > 0); ++splits) {
+                splitLeaves[splits] = candidates.get (splits);
+                splitCounts[splits] = Math.min (Math.min (branching, remaining + 1), nodes.get (splitLeaves[splits]).members.length);
+                remaining -= splitCounts[splits] - 1;
+            }
+            Node[][] children = new Node[splits][];
+            IntStream.range (0, splits).parallel ().forEach (i -> {
+                Random random = new Random (seed ^ (splitLeaves[i] * 0x9e3779b97f4a7c15L));
+                children[i] = split (nodes.get (splitLeaves[i]), splitCounts[i], random);
+            });
+
+            // hang the new children on the tree. a split that couldn't separate anything (all of
+            // the members are the same point) leaves its node as a leaf for good
+            List<Integer> nextLeaves = new ArrayList<> (leaves);
+            int grown = 0;
+            for (int i = 0; i < splits; ++i) {
+                Node parent = nodes.get (splitLeaves[i]);
+                if (children[i].length > 1) {
+                    parent.firstChild = nodes.size ();
+                    parent.childCount = children[i].length;
+                    parent.members = null;
+                    for (Node child : children[i]) {
+                        child.settled = child.members.length < 2;
+                        nextLeaves.add (nodes.size ());
+                        nodes.add (child);
+                    }
+                    leafCount += children[i].length - 1;
+                    ++grown;
+                } else {
+                    parent.settled = true;
+                }
+            }
+            nextLeaves.removeIf (leaf -> nodes.get (leaf).childCount > 0);
+            leaves = nextLeaves;
+            log.debug ("Round " + round++ + ": " + grown + " splits, " + leafCount + " clusters");
+        }
+
+        // number the leaves in tree order, so neighboring clusters are usually numbered close
+        // together, and label the samples
+        int[] labels = new int[n];
+        centroids = new Tuple[leafCount];
+        int cluster = 0;
+        int[] stack = new int[nodes.size ()];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            Node node = nodes.get (stack[--top]);
+            if (node.childCount == 0) {
+                node.cluster = cluster;
+                centroids[cluster] = new Tuple (node.centroid);
+                if (node.members != null) {
+                    for (int i : node.members) {
+                        labels[i] = cluster;
+                    }
+                }
+                node.members = null;
+                ++cluster;
+            } else {
+                for (int child = node.firstChild + node.childCount - 1; child >= node.firstChild; --child) {
+                    stack[top++] = child;
+                }
+            }
+        }
+        indexClusters (labels, leafCount);
+
+        if (listener != null) {
+            listener.phase (this, "split", System.nanoTime () - start);
+        }
+        log.info ("Finished (" + leafCount + " clusters, " + nodes.size () + " nodes)");
+        return this;
+    }
+
+    // a small k-means over the members of a node, from distinct members picked at random. the
+    // centroids of the children are the ones the final assignment was made with, so a walk down
+    // the tree sends every member to the child it was put in. empty children are dropped
+    private Node[] split (Node node, int childCount, Random random) {
+        int[] members = node.members;
+        int m = members.length;
+        int k = dataSet.getK ();
+
+        // pick the starting centroids, a partial fisher-yates shuffle
+        int[] picks = members.clone ();
+        double[][] centroids = new double[childCount][];
+        for (int j = 0; j < childCount; ++j) {
+            int swap = j + random.nextInt (m - j);
+            int pick = picks[swap]; picks[swap] = picks[j]; picks[j] = pick;
+            centroids[j] = dataSet.get (pick).getValues ().clone ();
+        }
+
+        int[] which = new int[m];
+        Arrays.fill (which, -1);
+        for (int iteration = 0; ; ++iteration) {
+            // assign
+            boolean changed = false;
+            for (int i = 0; i < m; ++i) {
+                int nearest = nearest (centroids, dataSet.get (members[i]).getValues ());
+                if (nearest != which[i]) {
+                    which[i] = nearest;
+                    changed = true;
+                }
+            }
+            if ((! changed) || (iteration == iterations)) {
+                break;
+            }
+
+            // update, a centroid that lost all of its members stays where it was
+            double[][] sums = new double[childCount][k];
+            double[] totals = new double[childCount];
+            for (int i = 0; i < m; ++i) {
+                double weight = dataSet.getWeight (members[i]);
+                double[] values = dataSet.get (members[i]).getValues ();
+                for (int d = 0; d < k; ++d) {
+                    sums[which[i]][d] += values[d] * weight;
+                }
+                totals[which[i]] += weight;
+            }
+            for (int j = 0; j < childCount; ++j) {
+                if (totals[j] > 0) {
+                    for (int d = 0; d < k; ++d) {
+                        centroids[j][d] = sums[j][d] / totals[j];
+                    }
+                }
+            }
+        }
+
+        // gather the members of each child
+        int[] sizes = new int[childCount];
+        for (int i = 0; i < m; ++i) {
+            ++sizes[which[i]];
+        }
+        List<Node> children = new ArrayList<> ();
+        for (int j = 0; j < childCount; ++j) {
+            if (sizes[j] > 0) {
+                Node child = new Node ();
+                child.members = new int[sizes[j]];
+                child.centroid = centroids[j];
+                int count = 0;
+                for (int i = 0; i < m; ++i) {
+                    if (which[i] == j) {
+                        child.members[count++] = members[i];
+                    }
+                }
+                child.errorSq = errorSq (child.members, child.centroid);
+                children.add (child);
+            }
+        }
+        return children.toArray (new Node[0]);
+    }
+
+    // squared distance, stopping early once the partial sum can't beat the limit
+    private static double deltaNormSq (double[] a, double[] b, double limit) {
+        double acc = 0;
+        for (int d = 0; (d < a.length) && (acc < limit); ++d) {
+            double delta = a[d] - b[d];
+            acc += delta * delta;
+        }
+        return acc;
+    }
+
+    private static int nearest (double[][] centroids, double[] values) {
+        int nearest = 0;
+        double nearestSq = Double.MAX_VALUE;
+        for (int j = 0; j < centroids.length; ++j) {
+            double distanceSq = deltaNormSq (values, centroids[j], nearestSq);
+            if (distanceSq < nearestSq) {
+                nearestSq = distanceSq;
+                nearest = j;
+            }
+        }
+        return nearest;
+    }
+
+    private double[] mean (int[] members) {
+        int k = dataSet.getK ();
+        double[] sum = new double[k];
+        double total = 0;
+        for (int i : members) {
+            double weight = dataSet.getWeight (i);
+            double[] values = dataSet.get (i).getValues ();
+            for (int d = 0; d < k; ++d) {
+                sum[d] += values[d] * weight;
+            }
+            total += weight;
+        }
+        for (int d = 0; d < k; ++d) {
+            sum[d] = (total > 0) ? (sum[d] / total) : 0;
+        }
+        return sum;
+    }
+
+    private double errorSq (int[] members, double[] centroid) {
+        double errorSq = 0;
+        for (int i : members) {
+            errorSq += dataSet.getWeight (i) * deltaNormSq (dataSet.get (i).getValues (), centroid, Double.MAX_VALUE);
+        }
+        return errorSq;
+    }
+
+    // walk down the tree to the nearest child at each level. the walk starts at the first child, so
+    // a tuple that isn't nearer to any of them (NaN, or so far away the distance overflows) still
+    // goes down the tree instead of back to the root
+    public int assign (Tuple tuple) {
+        double[] values = tuple.getValues ();
+        Node node = nodes.get (0);
+        while (node.childCount > 0) {
+            int nearest = node.firstChild;
+            double nearestSq = Double.MAX_VALUE;
+            for (int child = node.firstChild, end = node.firstChild + node.childCount; child < end; ++child) {
+                double distanceSq = deltaNormSq (values, nodes.get (child).centroid, nearestSq);
+                if (distanceSq < nearestSq) {
+                    nearestSq = distanceSq;
+                    nearest = child;
+                }
+            }
+            node = nodes.get (nearest);
+        }
+        return node.cluster;
+    }
+
+    // the centroids of the leaves, by cluster
+    public Tuple[] getCentroids () {
+        return centroids;
+    }
+
+    // an exact codebook over the leaves, for when the walk down the tree isn't good enough
+    public Codebook getCodebook () {
+        return new Codebook (centroids);
+    }
+
+    @Override
+    public int getClusterCount () {
+        return leafCount;
+    }
+}
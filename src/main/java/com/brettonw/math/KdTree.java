@@ -0,0 +1,262 @@
+package com.brettonw.math;
+
+import java.util.Arrays;
+
+// https://en.wikipedia.org/wiki/K-d_tree
+// a k-d tree over the tuples in a data set, splitting the widest dimension of each node at the
+// median. the coordinates are copied into one flat array in tree order, so the points in a node are
+// contiguous, and every node keeps its bounding box for pruning searches. a search keeps its state
+// in its own Search, so any number of threads can search one tree at once (setLabels is the
+// exception, it changes the tree)
+public class KdTree {
+    private static final int LEAF_SIZE = 8;
+
+    private int n;
+    private int k;
+    private double[] values;      // n k-valued points in tree order, flattened
+    private int[] order;          // tree position -> data set index
+
+    // the nodes, in pre-order so children always come after their parent
+    private int nodeCount;
+    private int[] nodeStart;      // first tree position in the node
+    private int[] nodeEnd;        // one past the last tree position in the node
+    private int[] nodeLeft;       // left child, or -1 for a leaf
+    private int[] nodeRight;      // right child, or -1 for a leaf
+    private double[] nodeMin;     // k-valued bounding box minimum
+    private double[] nodeMax;     // k-valued bounding box maximum
+
+    // per node label, used to skip whole subtrees in a search that excludes a label
+    private int[] nodeLabel;
+
+    // the state of one search - the locus, the label it excludes (if labels isn't null), and the
+    // result as the tree position of the nearest point and its squared distance. a caller that
+    // searches many times can keep one and reuse its locus
+    static class Search {
+        double[] locus;
+        int excludeLabel;
+        int[] labels;
+        int nearestPosition;
+        double nearestDistanceSq;
+    }
+
+    public KdTree (DataSet dataSet) {
+        n = dataSet.getN ();
+        k = dataSet.getK ();
+        order = new int[n];
+        for (int i = 0; i < n; ++i) {
+            order[i] = i;
+        }
+        double[] unordered = new double[n * k];
+        for (int i = 0; i < n; ++i) {
+            System.arraycopy (dataSet.get (i).getValues (), 0, unordered, i * k, k);
+        }
+
+        int capacity = Math.max (1, (4 * n) / LEAF_SIZE);
+        nodeStart = new int[capacity];
+        nodeEnd = new int[capacity];
+        nodeLeft = new int[capacity];
+        nodeRight = new int[capacity];
+        nodeMin = new double[capacity * k];
+        nodeMax = new double[capacity * k];
+        nodeCount = 0;
+        if (n > 0) {
+            build (unordered, 0, n);
+        }
+
+        // lay the coordinates out in tree order
+        values = new double[n * k];
+        for (int i = 0; i < n; ++i) {
+            System.arraycopy (unordered, order[i] * k, values, i * k, k);
+        }
+    }
+
+    private void grow () {
+        int capacity = nodeStart.length * 2;
+        nodeStart = Arrays.copyOf (nodeStart, capacity);
+        nodeEnd = Arrays.copyOf (nodeEnd, capacity);
+        nodeLeft = Arrays.copyOf (nodeLeft, capacity);
+        nodeRight = Arrays.copyOf (nodeRight, capacity);
+        nodeMin = Arrays.copyOf (nodeMin, capacity * k);
+        nodeMax = Arrays.copyOf (nodeMax, capacity * k);
+    }
+
+    private int build (double[] unordered, int start, int end) {
+        if (nodeCount == nodeStart.length) {
+            grow ();
+        }
+        int node = nodeCount++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+
+        // compute the bounding box, and find the widest dimension
+        int boxOffset = node * k;
+        Arrays.fill (nodeMin, boxOffset, boxOffset + k, Double.MAX_VALUE);
+        Arrays.fill (nodeMax, boxOffset, boxOffset + k, -Double.MAX_VALUE);
+        for (int i = start; i < end; ++i) {
+            int offset = order[i] * k;
+            for (int j = 0; j < k; ++j) {
+                double value = unordered[offset + j];
+                if (value < nodeMin[boxOffset + j]) nodeMin[boxOffset + j] = value;
+                if (value > nodeMax[boxOffset + j]) nodeMax[boxOffset + j] = value;
+            }
+        }
+
+        if ((end - start) <= LEAF_SIZE) {
+            nodeLeft[node] = nodeRight[node] = -1;
+        } else {
+            int splitDimension = 0;
+            for (int j = 1; j < k; ++j) {
+                if ((nodeMax[boxOffset + j] - nodeMin[boxOffset + j]) > (nodeMax[boxOffset + splitDimension] - nodeMin[boxOffset + splitDimension])) {
+                    splitDimension = j;
+                }
+            }
+            int mid = (start + end) >>> 1;
+            select (unordered, splitDimension, start, end - 1, mid);
+            int left = build (unordered, start, mid);
+            int right = build (unordered, mid, end);
+            nodeLeft[node] = left;
+            nodeRight[node] = right;
+        }
+        return node;
+    }
+
+    // quickselect, partitions order[lo..hi] so that position 'nth' holds the point that would be
+    // there if the range were sorted on the given dimension
+    private void select (double[] unordered, int dimension, int lo, int hi, int nth) {
+        while (lo < hi) {
+            double pivot = unordered[(order[(lo + hi) >>> 1] * k) + dimension];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (unordered[(order[i] * k) + dimension] < pivot) ++i;
+                while (unordered[(order[j] * k) + dimension] > pivot) --j;
+                if (i <= j) {
+                    int swap = order[i]; order[i] = order[j]; order[j] = swap;
+                    ++i; --j;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    public int getN () {
+        return n;
+    }
+
+    // the data set index of the point at a tree position
+    public int getIndex (int position) {
+        return order[position];
+    }
+
+    private double boxDistanceSq (int node, double[] locus) {
+        int boxOffset = node * k;
+        double acc = 0;
+        for (int j = 0; j < k; ++j) {
+            double value = locus[j];
+            double min = nodeMin[boxOffset + j];
+            double max = nodeMax[boxOffset + j];
+            double delta = (value < min) ? (min - value) : ((value > max) ? (value - max) : 0);
+            acc += delta * delta;
+        }
+        return acc;
+    }
+
+    private double pointDistanceSq (int position, double[] locus, double limit) {
+        double acc = 0;
+        for (int j = 0, offset = position * k; (j < k) && (acc < limit); ++j) {
+            double delta = values[offset + j] - locus[j];
+            acc += delta * delta;
+        }
+        return acc;
+    }
+
+    private void search (int node, Search search) {
+        int[] labels = search.labels;
+        if ((labels != null) && (nodeLabel[node] == search.excludeLabel)) {
+            return;
+        }
+        double[] locus = search.locus;
+        if (boxDistanceSq (node, locus) >= search.nearestDistanceSq) {
+            return;
+        }
+        int left = nodeLeft[node];
+        if (left < 0) {
+            for (int i = nodeStart[node], end = nodeEnd[node]; i < end; ++i) {
+                if ((labels == null) || (labels[order[i]] != search.excludeLabel)) {
+                    double distanceSq = pointDistanceSq (i, locus, search.nearestDistanceSq);
+                    if (distanceSq < search.nearestDistanceSq) {
+                        search.nearestDistanceSq = distanceSq;
+                        search.nearestPosition = i;
+                    }
+                }
+            }
+        } else {
+            // visit the nearer child first, so the far one is more likely to be pruned
+            int right = nodeRight[node];
+            if (boxDistanceSq (left, locus) <= boxDistanceSq (right, locus)) {
+                search (left, search);
+                search (right, search);
+            } else {
+                search (right, search);
+                search (left, search);
+            }
+        }
+    }
+
+    // the data set index of the nearest point to the locus, or -1 if the tree is empty
+    public int nearest (Tuple locus) {
+        Search search = new Search ();
+        search.locus = locus.getValues ();
+        search.nearestPosition = -1;
+        search.nearestDistanceSq = Double.MAX_VALUE;
+        if (n > 0) {
+            search (0, search);
+        }
+        return (search.nearestPosition >= 0) ? order[search.nearestPosition] : -1;
+    }
+
+    // label every node with the label all of its points share, or -1 if they don't all match.
+    // labels are indexed by data set index, and must not be negative
+    void setLabels (int[] labels) {
+        if (nodeLabel == null) {
+            nodeLabel = new int[nodeCount];
+        }
+        // children come after their parents, so a reverse walk sees both children first
+        for (int node = nodeCount - 1; node >= 0; --node) {
+            int left = nodeLeft[node];
+            if (left < 0) {
+                int label = labels[order[nodeStart[node]]];
+                for (int i = nodeStart[node] + 1, end = nodeEnd[node]; (i < end) && (label >= 0); ++i) {
+                    if (labels[order[i]] != label) {
+                        label = -1;
+                    }
+                }
+                nodeLabel[node] = label;
+            } else {
+                int label = nodeLabel[left];
+                nodeLabel[node] = (label == nodeLabel[nodeRight[node]]) ? label : -1;
+            }
+        }
+    }
+
+    // the tree position of the nearest point to the point at 'position' with a different label,
+    // not farther than the limit (squared) - or -1 if there is none. the squared distance is left
+    // in the search. setLabels must have been called with the current labels
+    int nearestOtherLabel (int position, int[] labels, double limitSq, Search search) {
+        if (search.locus == null) {
+            search.locus = new double[k];
+        }
+        System.arraycopy (values, position * k, search.locus, 0, k);
+        search.excludeLabel = labels[order[position]];
+        search.labels = labels;
+        search.nearestPosition = -1;
+        search.nearestDistanceSq = limitSq;
+        search (0, search);
+        return search.nearestPosition;
+    }
+}
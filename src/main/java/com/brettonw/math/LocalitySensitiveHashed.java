@@ -0,0 +1,304 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+// https://en.wikipedia.org/wiki/Locality-sensitive_hashing
+// an approximate index for high dimensional data, where neither the naive scan nor the grid of
+// SpatiallyIndexed is practical. each of several tables hashes a tuple by a handful of random
+// projections, so tuples that are close together are likely to land in the same bucket of at
+// least one table. a search only looks at the tuples in the buckets the locus hashes to, and
+// checks their exact distance, so every result is a true neighbor but some neighbors can be
+// missed. more tables find more of them, at the cost of more buckets to look at. DensityBasedScan
+// and any other user of rangeSearch become approximate just by being given this data set. the rows
+// of a SparseDataSet can be hashed where they are, with the dot products of the projections only
+// over their non-zero values
+public class LocalitySensitiveHashed extends DataSet {
+    private static final Logger log = LogManager.getLogger (LocalitySensitiveHashed.class);
+
+    // p-stable (gaussian) projections quantized into buckets of a given width, for euclidean
+    // distance, or the sides of random hyperplanes through the origin, for the angle between
+    // tuples (the results are still checked by euclidean distance, which orders neighbors the same
+    // way as the angle does for normalized tuples)
+    public static final int METRIC_EUCLIDEAN = 0;
+    public static final int METRIC_ANGULAR = 1;
+
+    private int metric;
+    private int tableCount;
+    private int hashCount;          // projections per table
+    private double width;           // bucket width of a euclidean projection
+    private long seed;
+    private int tablesSearched;
+
+    private double[] projections;   // tableCount * hashCount k-valued projections, flattened
+    private double[] offsets;       // tableCount * hashCount offsets into a bucket
+    private long[][] keys;          // per table, the bucket keys in ascending order
+    private int[][] ids;            // per table, the tuple in each position of keys
+
+    private SparseDataSet sparse;   // the rows, if they are sparse rather than tuples
+
+    // there is no listener yet when the constructor builds the tables, so the hash phase is only
+    // reported by a later setTuples
+    public LocalitySensitiveHashed (Tuple[] tuples, int metric, int tableCount, int hashCount, double width, long seed) {
+        configure (metric, tableCount, hashCount, width, seed);
+        setTuples (tuples);
+    }
+
+    // the same tables over sparse rows, the projections are still dense, so they take
+    // tableCount * hashCount * k values
+    public LocalitySensitiveHashed (SparseDataSet sparse, int metric, int tableCount, int hashCount, double width, long seed) {
+        configure (metric, tableCount, hashCount, width, seed);
+        this.sparse = sparse;
+        n = sparse.getN ();
+        k = sparse.getK ();
+        bounds = sparse.getBounds ();
+        buildTables ();
+    }
+
+    private void configure (int metric, int tableCount, int hashCount, double width, long seed) {
+        if ((metric == METRIC_ANGULAR) && (hashCount > Long.SIZE)) {
+            throw new IllegalArgumentException ("Angular hashing takes at most " + Long.SIZE + " hashes per table (" + hashCount + ")");
+        }
+        this.metric = metric;
+        this.tableCount = tableCount;
+        this.hashCount = hashCount;
+        this.width = width;
+        this.seed = seed;
+        tablesSearched = tableCount;
+    }
+
+    // the recall versus speed knob, a search only looks in the first tablesSearched tables
+    public LocalitySensitiveHashed setTablesSearched (int tablesSearched) {
+        this.tablesSearched = Math.max (1, Math.min (tablesSearched, tableCount));
+        return this;
+    }
+
+    @Override
+    public void setTuples (Tuple[] tuples, Bound[] bounds) {
+        super.setTuples (tuples, bounds);
+        sparse = null;
+        buildTables ();
+    }
+
+    private void buildTables () {
+        long start = (listener != null) ? System.nanoTime () : 0;
+
+        // draw the projections
+        Random random = new Random (seed);
+        int projectionCount = tableCount * hashCount;
+        projections = new double[projectionCount * k];
+        offsets = new double[projectionCount];
+        for (int i = 0; i < projectionCount; ++i) {
+            for (int j = 0; j < k; ++j) {
+                projections[(i * k) + j] = random.nextGaussian ();
+            }
+            offsets[i] = random.nextDouble () * width;
+        }
+
+        // hash every tuple into every table, and sort each table by key so a bucket is one range.
+        // the tables are independent, so they are built in parallel
+        keys = new long[tableCount][];
+        ids = new int[tableCount][];
+        IntStream.range (0, tableCount).parallel ().forEach (table -> {
+            long[] tableKeys = new long[n];
+            int[] tableIds = new int[n];
+            for (int i = 0; i < n; ++i) {
+                if (sparse != null) {
+                    int row = i;
+                    tableKeys[i] = hash (projection -> sparse.dot (row, projections, projection * k), table);
+                } else {
+                    tableKeys[i] = hash (tuples[i].getValues (), table);
+                }
+                tableIds[i] = i;
+            }
+            sortByKey (tableKeys, tableIds);
+            keys[table] = tableKeys;
+            ids[table] = tableIds;
+        });
+
+        if (listener != null) {
+            listener.phase (this, "hash", System.nanoTime () - start);
+        }
+        log.info ("Tables: " + tableCount + ", hashes: " + hashCount + ((metric == METRIC_EUCLIDEAN) ? (", width: " + width) : ", angular"));
+    }
+
+    // the byte of a key at shift, with the sign bit flipped so the bytes sort in signed order, which
+    // is the order binarySearch expects
+    private static int digit (long key, int shift) {
+        return (int) (((key ^ Long.MIN_VALUE) >>> shift) & 0xff);
+    }
+
+    // an lsd radix sort of the keys, a byte at a time, carrying the ids along. it is stable and
+    // works on the primitive arrays, and a pass is skipped when every key has the same byte there,
+    // which is most of them for short angular keys
+    private static void sortByKey (long[] keys, int[] ids) {
+        int n = keys.length;
+        long[] fromKeys = keys, toKeys = new long[n];
+        int[] fromIds = ids, toIds = new int[n];
+        int[] offsets = new int[257];
+        for (int shift = 0; (shift < Long.SIZE) && (n > 0); shift += 8) {
+            Arrays.fill (offsets, 0);
+            for (int i = 0; i < n; ++i) {
+                ++offsets[digit (fromKeys[i], shift) + 1];
+            }
+            if (offsets[digit (fromKeys[0], shift) + 1] == n) {
+                continue;
+            }
+            for (int d = 0; d < 256; ++d) {
+                offsets[d + 1] += offsets[d];
+            }
+            for (int i = 0; i < n; ++i) {
+                int position = offsets[digit (fromKeys[i], shift)]++;
+                toKeys[position] = fromKeys[i];
+                toIds[position] = fromIds[i];
+            }
+            long[] swapKeys = fromKeys; fromKeys = toKeys; toKeys = swapKeys;
+            int[] swapIds = fromIds; fromIds = toIds; toIds = swapIds;
+        }
+        if (fromKeys != keys) {
+            System.arraycopy (fromKeys, 0, keys, 0, n);
+            System.arraycopy (fromIds, 0, ids, 0, n);
+        }
+    }
+
+    // the bucket of a tuple in one table
+    private long hash (double[] values, int table) {
+        return hash (projection -> {
+            double dot = 0;
+            for (int j = 0, offset = projection * k; j < k; ++j) {
+                dot += values[j] * projections[offset + j];
+            }
+            return dot;
+        }, table);
+    }
+
+    // the hashes of the projections of one table folded into one key, given the dot product of
+    // the tuple with each projection
+    private long hash (IntToDoubleFunction dots, int table) {
+        long key = 0;
+        for (int h = 0; h < hashCount; ++h) {
+            int projection = (table * hashCount) + h;
+            double dot = dots.applyAsDouble (projection);
+            if (metric == METRIC_ANGULAR) {
+                key = (key << 1) | ((dot >= 0) ? 1 : 0);
+            } else {
+                long bucket = (long) Math.floor ((dot + offsets[projection]) / width);
+                key = (key * 0x9e3779b97f4a7c15L) + bucket;
+            }
+        }
+        return key;
+    }
+
+    // the distinct tuples sharing a bucket with the locus in any of the searched tables, the count
+    // of buckets and tuples looked at go in counts (if it isn't null)
+    private int[] candidates (Tuple locus, int[] counts) {
+        double[] values = locus.getValues ();
+        int[][] ranges = new int[tablesSearched][];
+        int total = 0;
+        for (int table = 0; table < tablesSearched; ++table) {
+            long key = hash (values, table);
+            long[] tableKeys = keys[table];
+
+            // find the range of the bucket
+            int first = Arrays.binarySearch (tableKeys, key);
+            if (first >= 0) {
+                int last = first;
+                while ((first > 0) && (tableKeys[first - 1] == key)) {
+                    --first;
+                }
+                while (((last + 1) < n) && (tableKeys[last + 1] == key)) {
+                    ++last;
+                }
+                ranges[table] = new int[] {first, last + 1};
+                total += (last + 1) - first;
+            }
+        }
+
+        // gather the tuples from all the buckets, and sort them to drop the duplicates
+        int[] candidates = new int[total];
+        int count = 0;
+        for (int table = 0; table < tablesSearched; ++table) {
+            if (ranges[table] != null) {
+                System.arraycopy (ids[table], ranges[table][0], candidates, count, ranges[table][1] - ranges[table][0]);
+                count += ranges[table][1] - ranges[table][0];
+            }
+        }
+        Arrays.sort (candidates);
+        int distinct = 0;
+        for (int i = 0; i < total; ++i) {
+            if ((distinct == 0) || (candidates[distinct - 1] != candidates[i])) {
+                candidates[distinct++] = candidates[i];
+            }
+        }
+        if (counts != null) {
+            counts[0] = tablesSearched;
+            counts[1] = distinct;
+        }
+        return Arrays.copyOf (candidates, distinct);
+    }
+
+    // the exact squared distance from a candidate to the locus, the norm of the locus is only
+    // needed for sparse rows
+    private double deltaNormSq (int candidate, Tuple locus, double locusNormSq) {
+        return (sparse != null) ? sparse.deltaNormSq (candidate, locus.getValues (), locusNormSq) : Tuple.deltaNormSq (tuples[candidate], locus);
+    }
+
+    @Override
+    public int[] rangeSearch (Tuple locus, double range) {
+        int[] counts = (listener != null) ? new int[2] : null;
+        int[] candidates = candidates (locus, counts);
+
+        // keep the candidates that really are in range
+        double rangeSq = range * range;
+        double locusNormSq = (sparse != null) ? Tuple.normSq (locus) : 0;
+        int found = 0;
+        for (int candidate : candidates) {
+            if (deltaNormSq (candidate, locus, locusNormSq) < rangeSq) {
+                candidates[found++] = candidate;
+            }
+        }
+
+        if (counts != null) {
+            listener.rangeQuery (this, counts[0], counts[1], found);
+        }
+        return Arrays.copyOf (candidates, found);
+    }
+
+    // the nearest of the candidates, which can be fewer than count if the buckets are sparse
+    @Override
+    public int[] nearest (Tuple locus, int count) {
+        int[] counts = (listener != null) ? new int[2] : null;
+        int[] candidates = candidates (locus, counts);
+        NearestHeap nearest = new NearestHeap (Math.min (count, candidates.length));
+        double locusNormSq = (sparse != null) ? Tuple.normSq (locus) : 0;
+        for (int candidate : candidates) {
+            nearest.offer (candidate, deltaNormSq (candidate, locus, locusNormSq));
+        }
+
+        if (counts != null) {
+            listener.rangeQuery (this, counts[0], counts[1], Math.min (count, candidates.length));
+        }
+        return nearest.toArray ();
+    }
+
+    // sparse rows are made dense one at a time, on demand
+    @Override
+    public double deltaNormSq (int i, int j) {
+        return (sparse != null) ? sparse.deltaNormSq (i, j) : super.deltaNormSq (i, j);
+    }
+
+    @Override
+    public Tuple[] getTuples (int[] selection) {
+        return (sparse != null) ? sparse.getTuples (selection) : super.getTuples (selection);
+    }
+
+    @Override
+    public Tuple get (int i) {
+        return (sparse != null) ? sparse.get (i) : super.get (i);
+    }
+}
@@ -0,0 +1,154 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Random;
+
+// mini-batch k-means, each iteration samples a small batch from the data set, assigns the batch
+// against the current centroids, and then moves each centroid toward its assigned points with a
+// per-centroid learning rate. this never needs a full pass over the data until the final assignment
+// https://www.eecs.tufts.edu/~dsculley/papers/fastkmeans.pdf
+public class MiniBatchVectorQuantization extends ClusterAlgorithm {
+    private static final Logger log = LogManager.getLogger (MiniBatchVectorQuantization.class);
+
+    private int clusterCount;
+    private int batchSize;
+    private int iterations;
+    private Random random;
+    private StreamingVectorQuantization engine;
+    private int[] assign;
+
+    public MiniBatchVectorQuantization (DataSet dataSet) {
+        super (dataSet);
+        clusterCount = 0;
+        batchSize = 100;
+        iterations = 100;
+        random = new Random (System.currentTimeMillis ());
+    }
+
+    public MiniBatchVectorQuantization (DataSet dataSet, int clusterCount, int batchSize, int iterations) {
+        this (dataSet);
+        setClusterCount (clusterCount).setBatchSize (batchSize).setIterations (iterations).fit ();
+    }
+
+    public MiniBatchVectorQuantization setClusterCount (int clusterCount) {
+        this.clusterCount = clusterCount;
+        return this;
+    }
+
+    public MiniBatchVectorQuantization setBatchSize (int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public MiniBatchVectorQuantization setIterations (int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    // the starting centroids and the batches are drawn from this, so the same seed and the same
+    // calls give the same centroids
+    public MiniBatchVectorQuantization setSeed (long seed) {
+        random = new Random (seed);
+        return this;
+    }
+
+    // start the next fit from these centroids instead of a random pick from the data set
+    public MiniBatchVectorQuantization setCentroids (Tuple... centroids) {
+        engine = new StreamingVectorQuantization (centroids);
+        clusterCount = centroids.length;
+        return this;
+    }
+
+    // a fit after the data set has changed keeps refining the existing centroids, with the
+    // learning rates they had already decayed to
+    @Override
+    public MiniBatchVectorQuantization setDataSet (DataSet dataSet) {
+        super.setDataSet (dataSet);
+        return this;
+    }
+
+    // just the batches, for when only the centroids are needed and not the labels of every sample
+    public MiniBatchVectorQuantization train () {
+        int n = dataSet.getN ();
+
+        // warm start from the existing engine if it has the right number of centroids, otherwise
+        // pick 'clusterCount' random points from the dataSet to seed a new one
+        if ((engine == null) || (engine.getClusterCount () != clusterCount)) {
+            engine = new StreamingVectorQuantization (clusterCount, dataSet.getK ());
+            for (int i = 0; i < clusterCount; ++i) {
+                engine.add (dataSet.get (random.nextInt (n)));
+            }
+        }
+
+        log.info ("Start (batch size " + batchSize + ", iterations " + iterations + ")");
+        long start = (listener != null) ? System.nanoTime () : 0;
+        int[] batch = new int[batchSize];
+        int[] batchAssign = new int[batchSize];
+        for (int iteration = 0; iteration < iterations; ++iteration) {
+            Tuple[] previous = (listener != null) ? engine.getCentroids () : null;
+            // assign the whole batch against the centroids as they are at the start of the
+            // iteration, so the updates don't chase each other within a batch
+            for (int i = 0; i < batchSize; ++i) {
+                batch[i] = random.nextInt (n);
+                batchAssign[i] = engine.nearest (dataSet.get (batch[i]).getValues ());
+            }
+            for (int i = 0; i < batchSize; ++i) {
+                engine.update (batchAssign[i], dataSet.get (batch[i]).getValues ());
+            }
+            if (listener != null) {
+                Tuple[] current = engine.getCentroids ();
+                double delta = 0;
+                for (int i = 0; i < clusterCount; ++i) {
+                    delta += Tuple.deltaNormSq (previous[i], current[i]);
+                }
+                listener.iteration (this, iteration, delta, -1);
+            }
+        }
+        if (listener != null) {
+            listener.phase (this, "batches", System.nanoTime () - start);
+
+            // the batches compare every sample against every centroid
+            listener.distanceEvaluations (this, (long) iterations * batchSize * clusterCount);
+        }
+        return this;
+    }
+
+    @Override
+    public MiniBatchVectorQuantization fit () {
+        train ();
+
+        // one pass to assign every point to its final centroid
+        int n = dataSet.getN ();
+        long start = (listener != null) ? System.nanoTime () : 0;
+        assign = new int[n];
+        Codebook codebook = getCodebook ();
+        long[] evaluations = (listener != null) ? new long[1] : null;
+        for (int i = 0; i < n; ++i) {
+            assign[i] = codebook.assign (dataSet.get (i).getValues (), evaluations);
+        }
+        indexClusters (assign, clusterCount);
+        if (listener != null) {
+            listener.phase (this, "assign", System.nanoTime () - start);
+
+            // the final pass is pruned
+            listener.distanceEvaluations (this, evaluations[0]);
+        }
+        log.info ("Finished");
+        return this;
+    }
+
+    public Tuple[] getCentroids () {
+        return engine.getCentroids ();
+    }
+
+    public Codebook getCodebook () {
+        return new Codebook (engine.getCentroids ());
+    }
+
+    @Override
+    public int getClusterCount () {
+        return clusterCount;
+    }
+}
@@ -0,0 +1,136 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// https://en.wikipedia.org/wiki/Bor%C5%AFvka%27s_algorithm
+// the euclidean minimum spanning tree of a data set. each round, every component finds the shortest
+// edge to a point in any other component, and all of those edges are added at once, so the number
+// of components at least halves per round. the nearest-other-component searches run on a k-d tree
+// whose nodes are labeled when all their points are in one component, so whole subtrees of the
+// searching component are skipped. nothing here is O(n^2) in memory
+public class MinimumSpanningTree {
+    private static final Logger log = LogManager.getLogger (MinimumSpanningTree.class);
+
+    private int n;
+    private int[] edgeA;
+    private int[] edgeB;
+    private double[] edgeDistance;
+
+    // union-find over the data set indices
+    private int[] parent;
+
+    private int find (int i) {
+        while (parent[i] != i) {
+            // path halving
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    public MinimumSpanningTree (DataSet dataSet) {
+        n = dataSet.getN ();
+        int edgeCount = Math.max (0, n - 1);
+        edgeA = new int[edgeCount];
+        edgeB = new int[edgeCount];
+        edgeDistance = new double[edgeCount];
+        parent = new int[n];
+        for (int i = 0; i < n; ++i) {
+            parent[i] = i;
+        }
+
+        KdTree tree = new KdTree (dataSet);
+        KdTree.Search search = new KdTree.Search ();
+        int[] component = new int[n];
+        double[] bestDistanceSq = new double[n];
+        int[] bestA = new int[n];
+        int[] bestB = new int[n];
+        int edges = 0;
+        int round = 0;
+        while (edges < edgeCount) {
+            // label every point with its component, and the tree nodes with their components
+            for (int i = 0; i < n; ++i) {
+                component[i] = find (i);
+                bestDistanceSq[i] = Double.MAX_VALUE;
+            }
+            tree.setLabels (component);
+
+            // find the shortest edge out of every component, the best edge found so far for a
+            // component bounds the search for the rest of its points
+            for (int position = 0; position < n; ++position) {
+                int a = tree.getIndex (position);
+                int c = component[a];
+                int nearest = tree.nearestOtherLabel (position, component, bestDistanceSq[c], search);
+                if (nearest >= 0) {
+                    bestDistanceSq[c] = search.nearestDistanceSq;
+                    bestA[c] = a;
+                    bestB[c] = tree.getIndex (nearest);
+                }
+            }
+
+            // add them all, two components can pick the same edge, so only the first one counts
+            int added = edges;
+            for (int c = 0; c < n; ++c) {
+                if ((component[c] == c) && (bestDistanceSq[c] < Double.MAX_VALUE)) {
+                    int rootA = find (bestA[c]);
+                    int rootB = find (bestB[c]);
+                    if (rootA != rootB) {
+                        parent[rootA] = rootB;
+                        edgeA[edges] = bestA[c];
+                        edgeB[edges] = bestB[c];
+                        edgeDistance[edges] = Math.sqrt (bestDistanceSq[c]);
+                        ++edges;
+                    }
+                }
+            }
+
+            // a round always adds an edge unless some distances don't compare - a NaN or infinite
+            // value, or finite points so far apart (around 1e154) that the squared distance
+            // overflows - and then it would go around forever
+            if (edges == added) {
+                throw new IllegalArgumentException ("Spanning tree stopped at " + edges + " of " + edgeCount + " edges, the data has values that aren't finite, or points so far apart their squared distance overflows");
+            }
+            ++round;
+        }
+        log.info ("Spanning tree of " + n + " points in " + round + " round(s)");
+
+        // sort the edges by length
+        Integer[] sorted = new Integer[edgeCount];
+        for (int i = 0; i < edgeCount; ++i) {
+            sorted[i] = i;
+        }
+        Arrays.sort (sorted, Comparator.comparingDouble (i -> edgeDistance[i]));
+        int[] sortedA = new int[edgeCount];
+        int[] sortedB = new int[edgeCount];
+        double[] sortedDistance = new double[edgeCount];
+        for (int i = 0; i < edgeCount; ++i) {
+            sortedA[i] = edgeA[sorted[i]];
+            sortedB[i] = edgeB[sorted[i]];
+            sortedDistance[i] = edgeDistance[sorted[i]];
+        }
+        edgeA = sortedA;
+        edgeB = sortedB;
+        edgeDistance = sortedDistance;
+    }
+
+    // the edges, in order of increasing length, as data set indices
+    public int getEdgeCount () {
+        return edgeA.length;
+    }
+
+    public int getEdgeA (int i) {
+        return edgeA[i];
+    }
+
+    public int getEdgeB (int i) {
+        return edgeB[i];
+    }
+
+    public double getEdgeDistance (int i) {
+        return edgeDistance[i];
+    }
+}
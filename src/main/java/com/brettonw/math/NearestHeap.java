@@ -0,0 +1,72 @@
+package com.brettonw.math;
+
+// the count nearest of the entries offered to it, kept in a max-heap so the farthest one is at the
+// root, and an entry only costs anything when it beats that one
+class NearestHeap {
+    private final int[] heap;
+    private final double[] heapSq;
+    private int size;
+
+    NearestHeap (int count) {
+        heap = new int[count];
+        heapSq = new double[count];
+        size = 0;
+    }
+
+    void offer (int entry, double entrySq) {
+        if (size < heap.length) {
+            // sift up
+            int child = size++;
+            while (child > 0) {
+                int parent = (child - 1) / 2;
+                if (heapSq[parent] >= entrySq) {
+                    break;
+                }
+                heap[child] = heap[parent];
+                heapSq[child] = heapSq[parent];
+                child = parent;
+            }
+            heap[child] = entry;
+            heapSq[child] = entrySq;
+        } else if ((size > 0) && (entrySq < heapSq[0])) {
+            // replace the farthest
+            siftDown (size, entry, entrySq);
+        }
+    }
+
+    // put an entry at the root of the first size entries of the heap, and move it down into place
+    private void siftDown (int size, int entry, double entrySq) {
+        int parent = 0;
+        while (true) {
+            int child = (2 * parent) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (((child + 1) < size) && (heapSq[child + 1] > heapSq[child])) {
+                ++child;
+            }
+            if (heapSq[child] <= entrySq) {
+                break;
+            }
+            heap[parent] = heap[child];
+            heapSq[parent] = heapSq[child];
+            parent = child;
+        }
+        if (size > 0) {
+            heap[parent] = entry;
+            heapSq[parent] = entrySq;
+        }
+    }
+
+    // the entries, nearest first. this takes the farthest off the heap until it is empty, filling
+    // the result from the back
+    int[] toArray () {
+        int[] result = new int[size];
+        for (int end = size - 1; end >= 0; --end) {
+            result[end] = heap[0];
+            siftDown (end, heap[end], heapSq[end]);
+        }
+        size = 0;
+        return result;
+    }
+}
@@ -0,0 +1,221 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// https://en.wikipedia.org/wiki/Vector_quantization (product quantization, Jegou et al. 2011)
+// the k dimensions are split into m subspaces, and each subspace gets its own vector quantization
+// codebook of up to 256 centroids, so a sample is encoded as m bytes instead of k doubles, and the
+// m codebooks together can tell apart c^m different points. distances from a query are computed
+// asymmetrically - the query is never quantized - by first building a table of the squared
+// distances from each part of the query to every centroid of its subspace, after which the squared
+// distance to any encoded sample is the sum of m table lookups
+public class ProductQuantization {
+    private static final Logger log = LogManager.getLogger (ProductQuantization.class);
+
+    private int m;                  // number of subspaces
+    private int c;                  // centroids per subspace
+    private int trainingSize;
+    private long seed;
+
+    private int k;
+    private int[] subspaceStart;    // m + 1 offsets into the dimensions
+    private double[][] centroids;   // per subspace, c flattened centroids of that subspace
+    private int n;
+    private byte[][] codes;         // per subspace, the code of every sample
+
+    public ProductQuantization (int subspaces, int centroids) {
+        if ((centroids < 1) || (centroids > 256)) {
+            throw new IllegalArgumentException ("Centroids per subspace must be in 1..256 (" + centroids + ")");
+        }
+        m = subspaces;
+        c = centroids;
+        trainingSize = 100000;
+        seed = System.currentTimeMillis ();
+    }
+
+    // the codebooks are trained on a random sample of this many samples, the whole data set is
+    // encoded regardless
+    public ProductQuantization setTrainingSize (int trainingSize) {
+        this.trainingSize = trainingSize;
+        return this;
+    }
+
+    public ProductQuantization setSeed (long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    private double[] subvector (double[] values, int j) {
+        return Arrays.copyOfRange (values, subspaceStart[j], subspaceStart[j + 1]);
+    }
+
+    // train the codebooks and encode the data set
+    public ProductQuantization fit (DataSet dataSet) {
+        n = dataSet.getN ();
+        k = dataSet.getK ();
+        if ((m < 1) || (m > k)) {
+            throw new IllegalArgumentException ("Subspaces must be in 1.." + k + " (" + m + ")");
+        }
+        subspaceStart = new int[m + 1];
+        for (int j = 0; j <= m; ++j) {
+            subspaceStart[j] = (k * j) / m;
+        }
+        log.info ("Start (N: " + n + ", K: " + k + ", " + m + " subspaces of " + c + " centroids)");
+
+        // pick the training samples, a partial fisher-yates shuffle if there are too many
+        int t = Math.min (trainingSize, n);
+        int[] training = new int[n];
+        for (int i = 0; i < n; ++i) {
+            training[i] = i;
+        }
+        Random random = new Random (seed);
+        for (int i = 0; (i < t) && (t < n); ++i) {
+            int j = i + random.nextInt (n - i);
+            int swap = training[i]; training[i] = training[j]; training[j] = swap;
+        }
+
+        // train a codebook for each subspace, they are independent so they run in parallel. each
+        // one starts from distinct training samples picked with its own generator, drawn from the
+        // seed, so the codebooks don't depend on the order the subspaces run in
+        centroids = new double[m][];
+        Codebook[] codebooks = new Codebook[m];
+        long[] subspaceSeeds = new long[m];
+        for (int j = 0; j < m; ++j) {
+            subspaceSeeds[j] = random.nextLong ();
+        }
+        IntStream.range (0, m).parallel ().forEach (j -> {
+            Tuple[] subtuples = new Tuple[t];
+            for (int i = 0; i < t; ++i) {
+                subtuples[i] = new Tuple (subvector (dataSet.get (training[i]).getValues (), j));
+            }
+            Random subspaceRandom = new Random (subspaceSeeds[j]);
+            int[] picks = new int[t];
+            for (int i = 0; i < t; ++i) {
+                picks[i] = i;
+            }
+            Tuple[] start = new Tuple[Math.min (c, t)];
+            for (int i = 0; i < start.length; ++i) {
+                int swap = i + subspaceRandom.nextInt (t - i);
+                int pick = picks[swap]; picks[swap] = picks[i]; picks[i] = pick;
+                start[i] = subtuples[pick];
+            }
+            VectorQuantization quantization = new VectorQuantization (new DataSet (subtuples)).setCentroids (start).fit ();
+            Tuple[] subCentroids = quantization.getCentroids ();
+            int width = subspaceStart[j + 1] - subspaceStart[j];
+            centroids[j] = new double[subCentroids.length * width];
+            for (int code = 0; code < subCentroids.length; ++code) {
+                System.arraycopy (subCentroids[code].getValues (), 0, centroids[j], code * width, width);
+            }
+            codebooks[j] = new Codebook (subCentroids);
+        });
+
+        // encode everything
+        codes = new byte[m][n];
+        IntStream.range (0, n).parallel ().forEach (i -> {
+            double[] values = dataSet.get (i).getValues ();
+            for (int j = 0; j < m; ++j) {
+                codes[j][i] = (byte) codebooks[j].assign (subvector (values, j));
+            }
+        });
+        log.info ("Finished (" + ((long) n * m) + " bytes of codes)");
+        return this;
+    }
+
+    public int getN () { return n; }
+    public int getK () { return k; }
+    public int getSubspaceCount () { return m; }
+    public int getCentroidCount () { return c; }
+
+    // the code of sample i in subspace j, 0..c-1
+    public int getCode (int i, int j) {
+        return codes[j][i] & 0xff;
+    }
+
+    // the nearest centroid in each subspace, which is the smallest entry in each row of the table
+    public byte[] encode (Tuple tuple) {
+        double[] table = getLookupTable (tuple);
+        byte[] code = new byte[m];
+        for (int j = 0; j < m; ++j) {
+            int nearest = 0;
+            for (int i = 1; i < c; ++i) {
+                if (table[(j * c) + i] < table[(j * c) + nearest]) {
+                    nearest = i;
+                }
+            }
+            code[j] = (byte) nearest;
+        }
+        return code;
+    }
+
+    // the point sample i was encoded as
+    public Tuple decode (int i) {
+        double[] values = new double[k];
+        for (int j = 0; j < m; ++j) {
+            int start = subspaceStart[j], width = subspaceStart[j + 1] - start;
+            System.arraycopy (centroids[j], getCode (i, j) * width, values, start, width);
+        }
+        return new Tuple (values);
+    }
+
+    // the squared distance from each part of the query to every centroid of its subspace, laid
+    // out as m rows of c. build this once per query, and use it for every sample
+    public double[] getLookupTable (Tuple query) {
+        double[] values = query.getValues ();
+        double[] table = new double[m * c];
+        Arrays.fill (table, Double.MAX_VALUE);
+        for (int j = 0; j < m; ++j) {
+            int start = subspaceStart[j], width = subspaceStart[j + 1] - start;
+            double[] subCentroids = centroids[j];
+            for (int code = 0, count = subCentroids.length / width; code < count; ++code) {
+                double acc = 0;
+                for (int d = 0; d < width; ++d) {
+                    double delta = values[start + d] - subCentroids[(code * width) + d];
+                    acc += delta * delta;
+                }
+                table[(j * c) + code] = acc;
+            }
+        }
+        return table;
+    }
+
+    // the approximate squared distance from the query a table was built for to sample i
+    public double distanceSq (double[] table, int i) {
+        double acc = 0;
+        for (int j = 0; j < m; ++j) {
+            acc += table[(j * c) + (codes[j][i] & 0xff)];
+        }
+        return acc;
+    }
+
+    // the samples whose approximate distance from the locus is inside the range
+    public int[] rangeSearch (Tuple locus, double range) {
+        double[] table = getLookupTable (locus);
+        double rangeSq = range * range;
+        int[] found = new int[16];
+        int count = 0;
+        for (int i = 0; i < n; ++i) {
+            if (distanceSq (table, i) < rangeSq) {
+                if (count == found.length) {
+                    found = Arrays.copyOf (found, count * 2);
+                }
+                found[count++] = i;
+            }
+        }
+        return Arrays.copyOf (found, count);
+    }
+
+    // the count samples with the smallest approximate distance from the query, nearest first
+    public int[] nearest (Tuple query, int count) {
+        double[] table = getLookupTable (query);
+        NearestHeap nearest = new NearestHeap (Math.min (count, n));
+        for (int i = 0; i < n; ++i) {
+            nearest.offer (i, distanceSq (table, i));
+        }
+        return nearest.toArray ();
+    }
+}
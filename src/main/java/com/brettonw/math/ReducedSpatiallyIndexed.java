@@ -0,0 +1,79 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// a data set that keeps its tuples at full dimension, but indexes them in a reduced space, for
+// data with too many dimensions for the grid of SpatiallyIndexed to be any use. a range search
+// finds candidates in the reduced index, and checks each one in the full space, so every result is
+// exact. principal components never lengthen a distance, so the candidates from the same range
+// include every true result. a random projection only keeps distances approximately, so its
+// candidates come from a range widened by the slack, and a neighbor can still be missed
+public class ReducedSpatiallyIndexed extends DataSet {
+    private static final Logger log = LogManager.getLogger (ReducedSpatiallyIndexed.class);
+
+    private DimensionReduction reduction;
+    private SpatiallyIndexed index;     // the reduced tuples, in index order
+    private int[] permutation;          // index position -> tuple
+    private double slack;
+
+    // the reduction is fit to the tuples if it hasn't been fit to anything yet
+    public ReducedSpatiallyIndexed (Tuple[] tuples, DimensionReduction reduction) {
+        this.reduction = reduction;
+        slack = (reduction.getMethod () == DimensionReduction.REDUCE_BY_PCA) ? 1.0 : 1.2;
+        setTuples (tuples);
+    }
+
+    // the ratio the range of a search is widened by in the reduced space
+    public ReducedSpatiallyIndexed setSlack (double slack) {
+        this.slack = slack;
+        return this;
+    }
+
+    @Override
+    public void setTuples (Tuple[] tuples, Bound[] bounds) {
+        super.setTuples (tuples, bounds);
+        if (n > 0) {
+            long start = (listener != null) ? System.nanoTime () : 0;
+            if (reduction.getK () != k) {
+                reduction.fit (this);
+            }
+            index = new SpatiallyIndexed (reduction.project (this));
+            permutation = index.getPermutation ();
+            if (listener != null) {
+                listener.phase (this, "reduce", System.nanoTime () - start);
+            }
+            log.info ("Indexed in " + reduction.getD () + " of " + k + " dimensions");
+        }
+    }
+
+    public DimensionReduction getReduction () {
+        return reduction;
+    }
+
+    @Override
+    public int[] rangeSearch (Tuple locus, double range) {
+        List<Integer> list = new ArrayList<> ();
+        int scanned = 0;
+        if (n > 0) {
+            // filter in the reduced space, and verify in the full one
+            int[] candidates = index.rangeSearch (reduction.project (locus), range * slack);
+            double rangeSq = range * range;
+            for (int candidate : candidates) {
+                int i = permutation[candidate];
+                if (Tuple.deltaNormSq (tuples[i], locus) < rangeSq) {
+                    list.add (i);
+                }
+            }
+            scanned = candidates.length;
+        }
+
+        if (listener != null) {
+            listener.rangeQuery (this, 1, scanned, list.size ());
+        }
+        return Utility.IntegerListToIntArray (list);
+    }
+}
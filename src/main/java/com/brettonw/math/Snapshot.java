@@ -0,0 +1,302 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// saves and loads the expensive parts of a run - a spatial index, centroids, cluster labels, and
+// dendrograms - so a restarted process doesn't have to rebuild or refit them. every file starts
+// with a small header (magic number, format version, and the type of the content), and everything
+// is little-endian. arrays are read back through memory-mapped windows of the file, so a load is
+// little more than a copy out of the page cache
+public class Snapshot {
+    private static final Logger log = LogManager.getLogger (Snapshot.class);
+
+    // "CLST" when read as bytes
+    private static final int MAGIC = 0x54534c43;
+    public static final int VERSION = 1;
+
+    private static final int TYPE_SPATIAL_INDEX = 1;
+    private static final int TYPE_CENTROIDS = 2;
+    private static final int TYPE_LABELS = 3;
+    private static final int TYPE_DENDROGRAM = 4;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int WINDOW_SIZE = 1 << 30;
+
+    //----------------------------------------------------------------------------------------------
+    // spatial index
+    //----------------------------------------------------------------------------------------------
+
+    // the tuples are saved in the sorted order the index refers to, so a load doesn't sort again
+    public static void save (Path path, SpatiallyIndexed dataSet) throws IOException {
+        try (Output output = new Output (path, TYPE_SPATIAL_INDEX)) {
+            int n = dataSet.getN (), k = dataSet.getK ();
+            output.putInt (n).putInt (k).putInt (dataSet.q);
+            for (int j = 0; j < k; ++j) {
+                output.putDouble (dataSet.bounds[j].getMin ()).putDouble (dataSet.bounds[j].getMax ());
+            }
+            for (int i = 0; i < n; ++i) {
+                output.putDoubles (dataSet.get (i).getValues ());
+            }
+            output.putInt (dataSet.index.length).putInts (dataSet.index);
+        }
+    }
+
+    public static SpatiallyIndexed loadSpatiallyIndexed (Path path) throws IOException {
+        try (Input input = new Input (path, TYPE_SPATIAL_INDEX)) {
+            int n = input.getInt (), k = input.getInt (), q = input.getInt ();
+            double[] bounds = input.getDoubles (2 * k);
+            Bound[] boundsArray = new Bound[k];
+            for (int j = 0; j < k; ++j) {
+                boundsArray[j] = new Bound (bounds[2 * j], bounds[(2 * j) + 1]);
+            }
+            Tuple[] tuples = input.getTuples (n, k);
+            int[] index = input.getInts (input.getInt ());
+            log.info ("Loaded spatial index (N: " + n + ", K: " + k + ", Q: " + q + ") from " + path);
+            return new SpatiallyIndexed (tuples, boundsArray, q, index);
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+    // centroids, e.g. from VectorQuantization or MiniBatchVectorQuantization. these can go straight
+    // into a Codebook, or into setCentroids to warm start another fit
+    //----------------------------------------------------------------------------------------------
+
+    public static void save (Path path, Tuple... centroids) throws IOException {
+        try (Output output = new Output (path, TYPE_CENTROIDS)) {
+            int k = (centroids.length > 0) ? centroids[0].getValues ().length : 0;
+            output.putInt (centroids.length).putInt (k);
+            for (Tuple centroid : centroids) {
+                output.putDoubles (centroid.getValues ());
+            }
+        }
+    }
+
+    public static Tuple[] loadCentroids (Path path) throws IOException {
+        try (Input input = new Input (path, TYPE_CENTROIDS)) {
+            int c = input.getInt (), k = input.getInt ();
+            return input.getTuples (c, k);
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+    // labels, the cluster of every sample (or -1) from any cluster algorithm, e.g. to restore a
+    // DensityBasedScan with setLabels
+    //----------------------------------------------------------------------------------------------
+
+    public static void save (Path path, int[] labels) throws IOException {
+        try (Output output = new Output (path, TYPE_LABELS)) {
+            output.putInt (labels.length).putInts (labels);
+        }
+    }
+
+    public static void save (Path path, ClusterAlgorithm clusterAlgorithm) throws IOException {
+        save (path, clusterAlgorithm.getLabels ());
+    }
+
+    public static int[] loadLabels (Path path) throws IOException {
+        try (Input input = new Input (path, TYPE_LABELS)) {
+            return input.getInts (input.getInt ());
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+    // dendrogram, in its linkage order, to restore an AgglomeratedHierarchy with setDendrogram
+    //----------------------------------------------------------------------------------------------
+
+    public static void save (Path path, Dendrogram dendrogram) throws IOException {
+        try (Output output = new Output (path, TYPE_DENDROGRAM)) {
+            int m = dendrogram.getMergeCount ();
+            output.putInt (dendrogram.getN ()).putInt (m);
+            for (int i = 0; i < m; ++i) {
+                output.putInt (dendrogram.getChildA (i));
+            }
+            for (int i = 0; i < m; ++i) {
+                output.putInt (dendrogram.getChildB (i));
+            }
+            for (int i = 0; i < m; ++i) {
+                output.putDouble (dendrogram.getDistance (i));
+            }
+        }
+    }
+
+    public static Dendrogram loadDendrogram (Path path) throws IOException {
+        try (Input input = new Input (path, TYPE_DENDROGRAM)) {
+            int n = input.getInt (), m = input.getInt ();
+            int[] childA = input.getInts (m);
+            int[] childB = input.getInts (m);
+            double[] distance = input.getDoubles (m);
+
+            // the merges are already in order
+            return new Dendrogram (n, childA, childB, distance, false);
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+    // file access
+    //----------------------------------------------------------------------------------------------
+
+    private static class Output implements AutoCloseable {
+        private FileChannel channel;
+        private ByteBuffer buffer;
+
+        public Output (Path path, int type) throws IOException {
+            channel = FileChannel.open (path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            buffer = ByteBuffer.allocate (BUFFER_SIZE).order (ByteOrder.LITTLE_ENDIAN);
+            putInt (MAGIC).putInt (VERSION).putInt (type);
+        }
+
+        private void reserve (int count) throws IOException {
+            if (buffer.remaining () < count) {
+                flush ();
+            }
+        }
+
+        public Output putInt (int value) throws IOException {
+            reserve (Integer.BYTES);
+            buffer.putInt (value);
+            return this;
+        }
+
+        public Output putDouble (double value) throws IOException {
+            reserve (Double.BYTES);
+            buffer.putDouble (value);
+            return this;
+        }
+
+        public Output putInts (int[] values) throws IOException {
+            for (int value : values) {
+                putInt (value);
+            }
+            return this;
+        }
+
+        public Output putDoubles (double[] values) throws IOException {
+            for (double value : values) {
+                putDouble (value);
+            }
+            return this;
+        }
+
+        private void flush () throws IOException {
+            buffer.flip ();
+            while (buffer.hasRemaining ()) {
+                channel.write (buffer);
+            }
+            buffer.clear ();
+        }
+
+        @Override
+        public void close () throws IOException {
+            try {
+                flush ();
+            } finally {
+                channel.close ();
+            }
+        }
+    }
+
+    private static class Input implements AutoCloseable {
+        private FileChannel channel;
+        private long position;
+        private ByteBuffer scalar;
+
+        public Input (Path path, int type) throws IOException {
+            channel = FileChannel.open (path, StandardOpenOption.READ);
+            scalar = ByteBuffer.allocate (Double.BYTES).order (ByteOrder.LITTLE_ENDIAN);
+            try {
+                if (getInt () != MAGIC) {
+                    throw new IOException ("Not a snapshot file (" + path + ")");
+                }
+                int version = getInt ();
+                if ((version < 1) || (version > VERSION)) {
+                    throw new IOException ("Unsupported snapshot version (" + version + ")");
+                }
+                int fileType = getInt ();
+                if (fileType != type) {
+                    throw new IOException ("Snapshot holds type " + fileType + ", expected " + type);
+                }
+            } catch (IOException exception) {
+                channel.close ();
+                throw exception;
+            }
+        }
+
+        private ByteBuffer read (int bytes) throws IOException {
+            scalar.clear ().limit (bytes);
+            while (scalar.hasRemaining ()) {
+                if (channel.read (scalar, position + scalar.position ()) < 0) {
+                    throw new IOException ("Unexpected end of snapshot");
+                }
+            }
+            position += bytes;
+            scalar.flip ();
+            return scalar;
+        }
+
+        public int getInt () throws IOException {
+            return read (Integer.BYTES).getInt ();
+        }
+
+        // map the next part of the file, no more than one window at a time
+        private ByteBuffer map (long bytes) throws IOException {
+            if ((position + bytes) > channel.size ()) {
+                throw new IOException ("Unexpected end of snapshot");
+            }
+            MappedByteBuffer window = channel.map (FileChannel.MapMode.READ_ONLY, position, bytes);
+            position += bytes;
+            return window.order (ByteOrder.LITTLE_ENDIAN);
+        }
+
+        public int[] getInts (int count) throws IOException {
+            int[] values = new int[count];
+            for (int offset = 0; offset < count; ) {
+                int length = Math.min (count - offset, WINDOW_SIZE / Integer.BYTES);
+                map ((long) length * Integer.BYTES).asIntBuffer ().get (values, offset, length);
+                offset += length;
+            }
+            return values;
+        }
+
+        public double[] getDoubles (int count) throws IOException {
+            double[] values = new double[count];
+            for (int offset = 0; offset < count; ) {
+                int length = Math.min (count - offset, WINDOW_SIZE / Double.BYTES);
+                map ((long) length * Double.BYTES).asDoubleBuffer ().get (values, offset, length);
+                offset += length;
+            }
+            return values;
+        }
+
+        // n k-valued tuples, a window of whole rows at a time
+        public Tuple[] getTuples (int n, int k) throws IOException {
+            Tuple[] tuples = new Tuple[n];
+            int rowsPerWindow = Math.max (1, WINDOW_SIZE / Math.max (1, k * Double.BYTES));
+            for (int offset = 0; offset < n; ) {
+                int rows = Math.min (n - offset, rowsPerWindow);
+                DoubleBuffer window = map ((long) rows * k * Double.BYTES).asDoubleBuffer ();
+                for (int i = 0; i < rows; ++i) {
+                    double[] values = new double[k];
+                    window.get (values);
+                    tuples[offset + i] = new Tuple (values);
+                }
+                offset += rows;
+            }
+            return tuples;
+        }
+
+        @Override
+        public void close () throws IOException {
+            channel.close ();
+        }
+    }
+}
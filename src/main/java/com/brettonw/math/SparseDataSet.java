@@ -0,0 +1,188 @@
+package com.brettonw.math;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// a data set of sparse rows, e.g. bag-of-features data with a k in the hundreds of thousands and
+// a few dozen non-zero values per row. the rows are stored compressed (CSR) - the columns and
+// values of every row one after the other, with an offset to the start of each row - and the
+// squared norm of each row is computed once, so a distance is |a|^2 + |b|^2 - 2 a.b, with the dot
+// product only over the non-zero values. memory and compute go with the non-zeros, not with k.
+// get still works, but it makes a dense tuple of the row, so it is best left to small selections
+public class SparseDataSet extends DataSet {
+    private static final Logger log = LogManager.getLogger (SparseDataSet.class);
+
+    private int[] rowOffsets;   // n + 1 offsets into columns and values
+    private int[] columns;      // the columns of each row, ascending
+    private double[] values;
+    private double[] normsSq;   // n squared row norms
+
+    // the columns of each row must be in ascending order
+    public SparseDataSet (int k, int[] rowOffsets, int[] columns, double[] values) {
+        this.k = k;
+        this.rowOffsets = rowOffsets;
+        this.columns = columns;
+        this.values = values;
+        n = rowOffsets.length - 1;
+
+        // the norms, and the bounds, which include the implicit zero of any column that isn't set
+        // in every row
+        normsSq = new double[n];
+        int[] columnCounts = new int[k];
+        bounds = new Bound[k];
+        for (int j = 0; j < k; ++j) {
+            bounds[j] = new Bound ();
+        }
+        for (int i = 0; i < n; ++i) {
+            double normSq = 0;
+            for (int p = rowOffsets[i], end = rowOffsets[i + 1]; p < end; ++p) {
+                normSq += values[p] * values[p];
+                bounds[columns[p]].accumulate (values[p]);
+                ++columnCounts[columns[p]];
+            }
+            normsSq[i] = normSq;
+        }
+        for (int j = 0; j < k; ++j) {
+            if (columnCounts[j] < n) {
+                bounds[j].accumulate (0);
+            }
+        }
+
+        // add a little bit of buffer so that the contents are entirely enclosed, the same as the
+        // dense data set does
+        if (n > 0) {
+            Bound.resize (bounds, 1.0 + 1.0e-6);
+        }
+        log.info ("N: " + n + ", K: " + k + ", non-zeros: " + columns.length);
+    }
+
+    public int getNonZeroCount () {
+        return rowOffsets[n];
+    }
+
+    // the range of positions of row i in getColumn and getValue
+    public int getRowStart (int i) { return rowOffsets[i]; }
+    public int getRowEnd (int i) { return rowOffsets[i + 1]; }
+    public int getColumn (int p) { return columns[p]; }
+    public double getValue (int p) { return values[p]; }
+
+    public double getNormSq (int i) {
+        return normsSq[i];
+    }
+
+    // sparse-dense dot product
+    public double dot (int i, double[] dense) {
+        return dot (i, dense, 0);
+    }
+
+    // sparse-dense dot product with the k dense values starting at offset, e.g. one of several
+    // vectors packed into a single array
+    public double dot (int i, double[] dense, int offset) {
+        double acc = 0;
+        for (int p = rowOffsets[i], end = rowOffsets[i + 1]; p < end; ++p) {
+            acc += values[p] * dense[offset + columns[p]];
+        }
+        return acc;
+    }
+
+    // sparse-sparse dot product, a merge of the two sorted column lists
+    public double dot (int i, int j) {
+        double acc = 0;
+        int p = rowOffsets[i], pEnd = rowOffsets[i + 1];
+        int q = rowOffsets[j], qEnd = rowOffsets[j + 1];
+        while ((p < pEnd) && (q < qEnd)) {
+            int delta = columns[p] - columns[q];
+            if (delta == 0) {
+                acc += values[p++] * values[q++];
+            } else if (delta < 0) {
+                ++p;
+            } else {
+                ++q;
+            }
+        }
+        return acc;
+    }
+
+    // the squared distance from row i to a dense point, given the point's squared norm. rounding
+    // can take the difference a hair below zero, so it is clamped
+    public double deltaNormSq (int i, double[] dense, double denseNormSq) {
+        return Math.max (0, (normsSq[i] + denseNormSq) - (2 * dot (i, dense)));
+    }
+
+    @Override
+    public double deltaNormSq (int i, int j) {
+        return Math.max (0, (normsSq[i] + normsSq[j]) - (2 * dot (i, j)));
+    }
+
+    @Override
+    public int[] rangeSearch (Tuple locus, double range) {
+        double[] dense = locus.getValues ();
+        double denseNormSq = Tuple.normSq (locus);
+        List<Integer> list = new ArrayList<> ();
+        double rangeSq = range * range;
+        for (int i = 0; i < n; ++i) {
+            if (deltaNormSq (i, dense, denseNormSq) < rangeSq) {
+                list.add (i);
+            }
+        }
+
+        if (listener != null) {
+            listener.rangeQuery (this, 1, n, list.size ());
+        }
+        return Utility.IntegerListToIntArray (list);
+    }
+
+    // the same as a search around get (i), without making the dense tuple
+    @Override
+    public int[] rangeSearch (int i, double range) {
+        List<Integer> list = new ArrayList<> ();
+        double rangeSq = range * range;
+        for (int j = 0; j < n; ++j) {
+            if (deltaNormSq (i, j) < rangeSq) {
+                list.add (j);
+            }
+        }
+
+        if (listener != null) {
+            listener.rangeQuery (this, 1, n, list.size ());
+        }
+        return Utility.IntegerListToIntArray (list);
+    }
+
+    @Override
+    public int[] nearest (Tuple locus, int count) {
+        double[] dense = locus.getValues ();
+        double denseNormSq = Tuple.normSq (locus);
+        NearestHeap nearest = new NearestHeap (Math.min (count, n));
+        for (int i = 0; i < n; ++i) {
+            nearest.offer (i, deltaNormSq (i, dense, denseNormSq));
+        }
+
+        if (listener != null) {
+            listener.rangeQuery (this, 1, n, Math.min (count, n));
+        }
+        return nearest.toArray ();
+    }
+
+    @Override
+    public Tuple[] getTuples (int[] selection) {
+        Tuple[] result = new Tuple[selection.length];
+        for (int i = 0, selectionLength = selection.length; i < selectionLength; ++i) {
+            result[i] = get (selection[i]);
+        }
+        return result;
+    }
+
+    // a dense copy of row i
+    @Override
+    public Tuple get (int i) {
+        double[] dense = new double[k];
+        for (int p = rowOffsets[i], end = rowOffsets[i + 1]; p < end; ++p) {
+            dense[columns[p]] = values[p];
+        }
+        return new Tuple (dense);
+    }
+}
@@ -4,34 +4,47 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class SpatiallyIndexed extends DataSet implements Comparator<Tuple> {
     private static final Logger log = LogManager.getLogger (SpatiallyIndexed.class);
 
     protected int q;              // quantization of the tuples in grid space
     protected int[] index;        // grid-based index into the tuple list
+    protected int[] permutation;  // sorted position -> position in the tuples as they were given
 
     public SpatiallyIndexed (Tuple... tuples) {
         super (tuples);
     }
 
+    public SpatiallyIndexed (Tuple[] tuples, Bound[] bounds) {
+        super (tuples, bounds);
+    }
+
+    // restore an index that was built before (e.g. from a snapshot), the tuples must already be
+    // in the sorted order the index refers to
+    SpatiallyIndexed (Tuple[] tuples, Bound[] bounds, int q, int[] index) {
+        this.tuples = tuples;
+        this.bounds = bounds;
+        n = tuples.length;
+        k = bounds.length;
+        this.q = q;
+        this.index = index;
+    }
+
     @Override
-    public void setTuples (Tuple... tuples) {
-        super.setTuples (tuples);
+    public void setTuples (Tuple[] tuples, Bound[] bounds) {
+        super.setTuples (tuples, bounds);
+        long start = (listener != null) ? System.nanoTime () : 0;
 
         // compute the quantization of the tuples for ordering purposes, such that the quantization
         // is equivalent to the expected grid cell occupancy - this is a heuristic I am using to
         // avoid thrashing the cache
         q = (int) Math.ceil (Math.pow (n, 1.0 / (k + 1)));
 
-        // sort the array using this quantization. this produces something akin to a Morton ordering
-        // of the array. I'm not using swizzling, but this ordering gives some nice locality
-        // properties to the access characteristics of the algorithm during execution
-        Arrays.sort (tuples, this);
-
         // build a k-D index (in a 1-D array)
         int indexSize = q;
         for (int i = 1; i < k; ++i) {
@@ -39,34 +52,102 @@ public class SpatiallyIndexed extends DataSet implements Comparator<Tuple> {
         }
         index = new int[indexSize];
 
-        // now loop over the tuples to fill the index
-        int occupiedCellCount = 0;
-        int lastIndexOffset = -1;
-        for (int i = 0; i < n; ++i) {
-            Tuple tuple = tuples[i];
-            int[] grid = mapToGrid (tuple);
-            int indexOffset = indexOffsetFromGrid (grid);
-            if (lastIndexOffset != indexOffset) {
-                log.debug ("i (" + i + "), coordinate " + tuple.toString () + ", grid " + gridToString (grid) + ", indexOffset (" + indexOffset + ")");
-                ++occupiedCellCount;
+        // compute the cell of every tuple once, and count the tuples in each cell. big data sets
+        // are split into chunks that are counted in parallel. every chunk has a histogram over all
+        // of the cells, so there are never more chunks than it takes for the histograms to add up
+        // to about n
+        int cellCount = indexSize;
+        int chunkCount = Math.max (1, Math.min (Utility.chunkCount (n), n / cellCount));
+        int[] cells = new int[n];
+        int[][] offsets = new int[chunkCount][];
+        Utility.chunks (chunkCount).forEach (chunk -> {
+            int[] counts = new int[cellCount];
+            for (int i = Utility.chunkStart (n, chunk, chunkCount), end = Utility.chunkStart (n, chunk + 1, chunkCount); i < end; ++i) {
+                cells[i] = cellOf (tuples[i].getValues ());
+                ++counts[cells[i]];
+            }
+            offsets[chunk] = counts;
+        });
 
-                // back fill any cells that might have been empty
-                while (lastIndexOffset < indexOffset) {
-                    index[++lastIndexOffset] = i;
+        // a prefix sum over the counts is the index - each cell starts where the cells before it
+        // end, and an empty cell starts where the next occupied cell does. at the same time, turn
+        // the counts of each chunk into the position its first tuple in each cell goes to. the
+        // cells are split into ranges, the total of each range is summed in parallel, a short
+        // serial prefix over those totals gives the start of each range, and then each range
+        // writes its part of the index in parallel
+        int rangeCount = (chunkCount > 1) ? Math.min (ForkJoinPool.getCommonPoolParallelism () * 4, cellCount) : 1;
+        int[] rangeStarts = new int[rangeCount + 1];
+        Utility.chunks (rangeCount).forEach (range -> {
+            int total = 0;
+            for (int cell = Utility.chunkStart (cellCount, range, rangeCount), end = Utility.chunkStart (cellCount, range + 1, rangeCount); cell < end; ++cell) {
+                for (int chunk = 0; chunk < chunkCount; ++chunk) {
+                    total += offsets[chunk][cell];
+                }
+            }
+            rangeStarts[range + 1] = total;
+        });
+        for (int range = 0; range < rangeCount; ++range) {
+            rangeStarts[range + 1] += rangeStarts[range];
+        }
+        int[] occupiedCellCounts = new int[rangeCount];
+        Utility.chunks (rangeCount).forEach (range -> {
+            int position = rangeStarts[range];
+            for (int cell = Utility.chunkStart (cellCount, range, rangeCount), end = Utility.chunkStart (cellCount, range + 1, rangeCount); cell < end; ++cell) {
+                index[cell] = position;
+                for (int chunk = 0; chunk < chunkCount; ++chunk) {
+                    int count = offsets[chunk][cell];
+                    offsets[chunk][cell] = position;
+                    position += count;
+                }
+                if (position > index[cell]) {
+                    ++occupiedCellCounts[range];
                 }
             }
+        });
+        int occupiedCellCount = IntStream.of (occupiedCellCounts).sum ();
+        if (listener != null) {
+            long now = System.nanoTime ();
+            listener.phase (this, "index", now - start);
+            start = now;
         }
 
-        // back fill from the end of the last cell
-        int end = indexSize - 1;
-        while (lastIndexOffset < end) {
-            index[++lastIndexOffset] = n;
+        // sort the array by cell, a stable counting sort using the offsets. this produces something
+        // akin to a Morton ordering of the array. I'm not using swizzling, but this ordering gives
+        // some nice locality properties to the access characteristics of the algorithm during
+        // execution. the tuples are sorted in place, so the caller's array is in index order too
+        Tuple[] unsorted = tuples.clone ();
+        permutation = new int[n];
+        Utility.chunks (chunkCount).forEach (chunk -> {
+            int[] next = offsets[chunk];
+            for (int i = Utility.chunkStart (n, chunk, chunkCount), end = Utility.chunkStart (n, chunk + 1, chunkCount); i < end; ++i) {
+                int sorted = next[cells[i]]++;
+                permutation[sorted] = i;
+                tuples[sorted] = unsorted[i];
+            }
+        });
+
+        if (listener != null) {
+            listener.phase (this, "sort", System.nanoTime () - start);
+        }
+        log.info ("Q: " + q + ", occupied cells: " + occupiedCellCount + ", occupancy: " + (n / Math.max (1, occupiedCellCount)) + ", chunks: " + chunkCount);
+    }
+
+    // the same as indexOffsetFromGrid (mapToGrid (tuple)), without allocating anything on the
+    // way. the bounds enclose all of the tuples, but a cell is clamped to the grid regardless
+    private int cellOf (double[] values) {
+        int cell = 0;
+        for (int i = 0; i < k; ++i) {
+            int grid = (int) Math.floor (bounds[i].mapToCanonical (values[i]) * q);
+            cell = (cell * q) + Math.min (Math.max (grid, 0), q - 1);
         }
+        return cell;
+    }
 
-        // spew the stats
-        log.info ("Q: " + q);
-        log.info ("occupied cells: " + occupiedCellCount);
-        log.info ("occupancy: " + (n / occupiedCellCount));
+    // the tuples are sorted into index order when the index is built, so the tuple at position i
+    // was at position getPermutation ()[i] in the array as it was given. a restored index doesn't
+    // know the original order, so this is null
+    public int[] getPermutation () {
+        return permutation;
     }
 
     public int[] mapToGrid (Tuple coordinate) {
@@ -121,12 +202,13 @@ public class SpatiallyIndexed extends DataSet implements Comparator<Tuple> {
         return stringBuilder.append (")").toString ();
     }
 
-    private void rangeSearchWorker (Tuple locus, double rangeSq, List<Integer> list, int[] grid, int[] minGrid, int[] maxGrid, int current) {
+    // 'counts' collects the cells visited and points scanned, it is null when there is no listener
+    private void rangeSearchWorker (Tuple locus, double rangeSq, List<Integer> list, int[] grid, int[] minGrid, int[] maxGrid, int current, int[] counts) {
         if (current < k) {
             // recur
             for (int i = minGrid[current]; i <= maxGrid[current]; ++i) {
                 grid[current] = i;
-                rangeSearchWorker (locus, rangeSq, list, grid, minGrid, maxGrid, current + 1);
+                rangeSearchWorker (locus, rangeSq, list, grid, minGrid, maxGrid, current + 1, counts);
             }
         } else {
             // the grid component is complete, look it up and loop over the tuples referenced there
@@ -135,6 +217,10 @@ public class SpatiallyIndexed extends DataSet implements Comparator<Tuple> {
                 int cellStart = index[indexOffset];
                 int nextIndexOffset = indexOffset + 1;
                 int cellEnd =  (nextIndexOffset < index.length) ? index[nextIndexOffset] : n;
+                if (counts != null) {
+                    ++counts[0];
+                    counts[1] += cellEnd - cellStart;
+                }
                 for (int i = index[indexOffset]; i < cellEnd; ++i) {
                     // check to see if the candidate is within the specified range of the search locus
                     Tuple candidate = tuples[i];
@@ -159,8 +245,19 @@ public class SpatiallyIndexed extends DataSet implements Comparator<Tuple> {
         // map that to the grid, and invoke a recursive worker to iterate over the grid cells
         int[] minGrid = mapToGrid (minTuple);
         int[] maxGrid = mapToGrid (maxTuple);
-        rangeSearchWorker (locus, range * range, list, new int[k], minGrid, maxGrid, 0);
 
+        // cells off the grid are empty, so clamp the search to the grid. otherwise a range that is
+        // wide compared to the bounds walks a huge number of empty cells, more so with each dimension
+        for (int i = 0; i < k; ++i) {
+            minGrid[i] = Math.max (minGrid[i], 0);
+            maxGrid[i] = Math.min (maxGrid[i], q - 1);
+        }
+        int[] counts = (listener != null) ? new int[2] : null;
+        rangeSearchWorker (locus, range * range, list, new int[k], minGrid, maxGrid, 0, counts);
+
+        if (counts != null) {
+            listener.rangeQuery (this, counts[0], counts[1], list.size ());
+        }
         return Utility.IntegerListToIntArray (list);
     }
 }
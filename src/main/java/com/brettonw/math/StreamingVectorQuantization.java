@@ -0,0 +1,120 @@
+package com.brettonw.math;
+
+import java.util.Iterator;
+
+// online k-means (MacQueen), each centroid moves toward the points assigned to it with a learning
+// rate of 1/count, so a centroid is always the running mean of everything it has absorbed. the
+// memory footprint is the centroids and their counts - O(c * k) - no matter how many points go by
+// https://en.wikipedia.org/wiki/K-means_clustering#Variations
+public class StreamingVectorQuantization {
+    private int clusterCount;
+    private int k;
+    private double[][] centroids;
+    private long[] counts;
+    private int seededCount;
+    private double minLearningRate;
+
+    public StreamingVectorQuantization (int clusterCount, int k) {
+        this.clusterCount = clusterCount;
+        this.k = k;
+        centroids = new double[clusterCount][];
+        counts = new long[clusterCount];
+        seededCount = 0;
+        minLearningRate = 0;
+    }
+
+    // warm start from an existing set of centroids (e.g. from a previous VectorQuantization run),
+    // each of them counts as a single observation so new data can still move them
+    public StreamingVectorQuantization (Tuple... centroids) {
+        this (centroids.length, centroids[0].getValues ().length);
+        for (Tuple centroid : centroids) {
+            seed (centroid.getValues ());
+        }
+    }
+
+    // the learning rate decays as 1/count, which converges for a stationary source but eventually
+    // stops listening to new data. a floor on the rate keeps the centroids following a stream whose
+    // distribution drifts over time
+    public StreamingVectorQuantization setMinLearningRate (double minLearningRate) {
+        this.minLearningRate = minLearningRate;
+        return this;
+    }
+
+    private void seed (double[] values) {
+        centroids[seededCount] = values.clone ();
+        counts[seededCount++] = 1;
+    }
+
+    public boolean isSeeded () {
+        return seededCount == clusterCount;
+    }
+
+    // returns the index of the nearest centroid, the caller must not have a partially seeded engine
+    int nearest (double[] values) {
+        int nearestIndex = 0;
+        double nearestNormSq = deltaNormSq (centroids[0], values, Double.MAX_VALUE);
+        for (int i = 1; i < clusterCount; ++i) {
+            double normSq = deltaNormSq (centroids[i], values, nearestNormSq);
+            if (normSq < nearestNormSq) {
+                nearestNormSq = normSq;
+                nearestIndex = i;
+            }
+        }
+        return nearestIndex;
+    }
+
+    // move centroid i toward values with its per-centroid learning rate
+    void update (int i, double[] values) {
+        double[] centroid = centroids[i];
+        double learningRate = Math.max (1.0 / ++counts[i], minLearningRate);
+        for (int j = 0; j < k; ++j) {
+            centroid[j] += (values[j] - centroid[j]) * learningRate;
+        }
+    }
+
+    // absorb a single point, the first 'clusterCount' points seed the centroids. returns the
+    // index of the centroid the point was assigned to
+    public int add (Tuple tuple) {
+        double[] values = tuple.getValues ();
+        if (seededCount < clusterCount) {
+            seed (values);
+            return seededCount - 1;
+        }
+        int nearestIndex = nearest (values);
+        update (nearestIndex, values);
+        return nearestIndex;
+    }
+
+    public StreamingVectorQuantization add (Iterator<Tuple> tuples) {
+        while (tuples.hasNext ()) {
+            add (tuples.next ());
+        }
+        return this;
+    }
+
+    public int getClusterCount () {
+        return clusterCount;
+    }
+
+    public Tuple[] getCentroids () {
+        Tuple[] result = new Tuple[seededCount];
+        for (int i = 0; i < seededCount; ++i) {
+            result[i] = new Tuple (centroids[i].clone ());
+        }
+        return result;
+    }
+
+    public long[] getCounts () {
+        return counts.clone ();
+    }
+
+    // squared distance with an early out once the partial sum exceeds the best found so far
+    static double deltaNormSq (double[] a, double[] b, double limit) {
+        double acc = 0;
+        for (int i = 0, k = a.length; (i < k) && (acc < limit); ++i) {
+            double delta = a[i] - b[i];
+            acc += delta * delta;
+        }
+        return acc;
+    }
+}
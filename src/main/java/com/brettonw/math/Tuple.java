@@ -93,7 +93,14 @@ public class Tuple {
     }
 
     public static double deltaNormSq (Tuple a, Tuple b) {
-        return normSq (delta (a, b));
+        // the same as normSq (delta (a, b)), without allocating the delta on every call
+        int k = a.values.length;
+        double acc = 0;
+        for (int i = 0; i < k; ++i) {
+            double delta = a.values[i] - b.values[i];
+            acc += delta * delta;
+        }
+        return acc;
     }
 
     public static double deltaNorm (Tuple a, Tuple b) {
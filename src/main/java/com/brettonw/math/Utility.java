@@ -1,8 +1,13 @@
 package com.brettonw.math;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class Utility {
+    // below this many items, a pass over them runs on one thread
+    static final int PARALLEL_THRESHOLD = 1 << 15;
+
     public static boolean close (double a, double b) {
         return (Math.abs (a - b) < 1.0e-6);
     }
@@ -16,4 +21,21 @@ public class Utility {
         }
         return result;
     }
+
+    // how many chunks a pass over n items is split into, a few per thread, but never so many
+    // that a chunk is smaller than the threshold
+    static int chunkCount (int n) {
+        return (n < PARALLEL_THRESHOLD) ? 1 : Math.max (1, Math.min (ForkJoinPool.getCommonPoolParallelism () * 4, n / PARALLEL_THRESHOLD));
+    }
+
+    // the first of n items in a chunk, the chunks are as even as they can be
+    static int chunkStart (int n, int chunk, int chunkCount) {
+        return (int) (((long) n * chunk) / chunkCount);
+    }
+
+    // the chunks, in parallel when there is more than one
+    static IntStream chunks (int chunkCount) {
+        IntStream range = IntStream.range (0, chunkCount);
+        return (chunkCount > 1) ? range.parallel () : range;
+    }
 }
@@ -3,8 +3,8 @@ package com.brettonw.math;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
 // https://en.wikipedia.org/wiki/Vector_quantization
@@ -16,29 +16,61 @@ public class VectorQuantization extends ClusterAlgorithm {
     private Tuple[] clusterCentroids;
     private int[] assign;
 
-    public VectorQuantization (DataSet dataSet, int clusterCount) {
+    public VectorQuantization (DataSet dataSet) {
         super (dataSet);
+        clusterCount = 0;
+    }
+
+    public VectorQuantization (DataSet dataSet, int clusterCount) {
+        this (dataSet);
+        setClusterCount (clusterCount).fit ();
+    }
+
+    public VectorQuantization setClusterCount (int clusterCount) {
         this.clusterCount = clusterCount;
+        return this;
+    }
 
+    // start the next fit from these centroids instead of a random pick from the data set
+    public VectorQuantization setCentroids (Tuple... centroids) {
+        clusterCentroids = centroids;
+        clusterCount = centroids.length;
+        return this;
+    }
+
+    // a fit after the data set has changed starts from the previous centroids, which usually
+    // converges in a handful of steps when the new data looks like the old
+    @Override
+    public VectorQuantization setDataSet (DataSet dataSet) {
+        super.setDataSet (dataSet);
+        return this;
+    }
+
+    @Override
+    public VectorQuantization fit () {
         // create the 'assign' array
         assign = new int[dataSet.getN ()];
 
+        // warm start from the existing centroids if there are the right number of them, otherwise
         // pick 'clusterCount' random points from the dataSet to start the algorithm
-        Random random = new Random (System.currentTimeMillis ());
-        clusterCentroids = new Tuple[clusterCount];
-        for (int i = 0; i < clusterCount; ++i) {
-            clusterCentroids[i] = dataSet.get (random.nextInt (dataSet.getN ()));
+        if ((clusterCentroids == null) || (clusterCentroids.length != clusterCount)) {
+            Random random = new Random (System.currentTimeMillis ());
+            clusterCentroids = new Tuple[clusterCount];
+            for (int i = 0; i < clusterCount; ++i) {
+                clusterCentroids[i] = dataSet.get (random.nextInt (dataSet.getN ()));
+            }
         }
 
-        log.info ("--------------------");
-        log.info ("Start");
+        log.info ("Start (" + clusterCount + " clusters)");
+        if (listener != null) {
+            // no sample has been assigned yet, so the first step counts them all as reassigned
+            Arrays.fill (assign, -1);
+        }
 
-        double delta = 0;
+        // this procedure is guaranteed to converge
+        int iteration = 0;
+        double delta;
         do {
-            log.info ("Delta: " + delta);
-            for (int i = 0; i < clusterCount; ++i) {
-                log.info ("Centroid " + clusterCentroids[i].toString ());
-            }
             Tuple[] newCentroids = step (clusterCentroids);
 
             // compute the delta from this step
@@ -47,70 +79,151 @@ public class VectorQuantization extends ClusterAlgorithm {
                 delta += Tuple.deltaNormSq (clusterCentroids[i], newCentroids[i]);
             }
             clusterCentroids = newCentroids;
+            if (listener != null) {
+                listener.iteration (this, iteration, delta, reassigned);
+            }
+            ++iteration;
         } while (delta > 0);
 
-        log.info ("--------------------");
-        log.info ("Finished");
-        for (int i = 0; i < clusterCount; ++i) {
-            log.info ("Centroid " + clusterCentroids[i].toString ());
-        }
+        log.info ("Finished (" + iteration + " iterations)");
+        return this;
     }
 
+    // the number of samples that changed cluster in the last step, only counted for a listener
+    private int reassigned;
+
     private Tuple[] step (Tuple... centroids) {
+        if (dataSet instanceof SparseDataSet) {
+            return sparseStep ((SparseDataSet) dataSet, centroids);
+        }
         int c = centroids.length;
 
-        // this procedure is guaranteed to converge
-
-        log.info ("--------------------");
-        log.info ("Step");
-
-        // loop over all of the tuples
-        for (int i = 0, n = dataSet.getN (); i < n; ++i) {
-            Tuple tuple = dataSet.get (i);
-            // determine which centroid the tuple is closest to
-            int nearestIndex = 0;
-            double nearestNormSq = Tuple.deltaNormSq (centroids[0], tuple);
-            for (int j = 1; j < c; ++j) {
-                double normSq = Tuple.deltaNormSq (centroids[j], tuple);
-                if (normSq < nearestNormSq) {
-                    nearestNormSq = normSq;
-                    nearestIndex = j;
+        // loop over all of the tuples, saving each one into the cluster whose centroid it is
+        // closest to
+        long start = (listener != null) ? System.nanoTime () : 0;
+        Codebook codebook = new Codebook (centroids);
+        if (listener == null) {
+            for (int i = 0, n = dataSet.getN (); i < n; ++i) {
+                assign[i] = codebook.assign (dataSet.get (i));
+            }
+        } else {
+            long[] evaluations = new long[1];
+            reassigned = 0;
+            for (int i = 0, n = dataSet.getN (); i < n; ++i) {
+                int cluster = codebook.assign (dataSet.get (i).getValues (), evaluations);
+                if (cluster != assign[i]) {
+                    ++reassigned;
+                    assign[i] = cluster;
                 }
             }
-
-            // save the tuple into that cluster
-            assign[i] = nearestIndex;
+            long now = System.nanoTime ();
+            listener.phase (this, "assign", now - start);
+            listener.distanceEvaluations (this, evaluations[0]);
+            start = now;
         }
+        indexClusters (assign, c);
 
         // now gather each cluster to compute new centroids
         Tuple[] newCentroids = new Tuple[c];
         for (int i = 0; i < c; ++i) {
-            Tuple[] clusterTuples = getCluster (i);
-            newCentroids[i] = Tuple.average (clusterTuples);
+            newCentroids[i] = dataSet.isWeighted () ? weightedAverage (i) : Tuple.average (getCluster (i));
             if (newCentroids[i] == null) {
                 newCentroids[i] = centroids[i];
             }
         }
+        if (listener != null) {
+            listener.phase (this, "update", System.nanoTime () - start);
+        }
         return newCentroids;
     }
 
-    @Override
-    public int getClusterCount () {
-        return clusterCount;
+    // the same step over sparse rows, the centroids stay dense. the distance from a row to each
+    // centroid is |x|^2 + |c|^2 - 2 x.c, with the centroid norms computed once per step, so it only
+    // costs as much as the non-zeros of the row. the new centroids are the (weighted) sums of the
+    // non-zeros of their rows
+    private Tuple[] sparseStep (SparseDataSet sparse, Tuple... centroids) {
+        int c = centroids.length;
+        int n = sparse.getN ();
+        int k = sparse.getK ();
+        long start = (listener != null) ? System.nanoTime () : 0;
+        double[] centroidNormsSq = new double[c];
+        for (int j = 0; j < c; ++j) {
+            centroidNormsSq[j] = Tuple.normSq (centroids[j]);
+        }
+        reassigned = 0;
+        for (int i = 0; i < n; ++i) {
+            int nearest = 0;
+            double nearestSq = Double.MAX_VALUE;
+            for (int j = 0; j < c; ++j) {
+                double distanceSq = sparse.deltaNormSq (i, centroids[j].getValues (), centroidNormsSq[j]);
+                if (distanceSq < nearestSq) {
+                    nearestSq = distanceSq;
+                    nearest = j;
+                }
+            }
+            if (nearest != assign[i]) {
+                ++reassigned;
+                assign[i] = nearest;
+            }
+        }
+        if (listener != null) {
+            long now = System.nanoTime ();
+            listener.phase (this, "assign", now - start);
+            listener.distanceEvaluations (this, (long) n * c);
+            start = now;
+        }
+        indexClusters (assign, c);
+
+        Tuple[] newCentroids = new Tuple[c];
+        for (int cluster = 0; cluster < c; ++cluster) {
+            double[] sum = new double[k];
+            double total = 0;
+            IntBuffer members = getClusterIndices (cluster);
+            while (members.hasRemaining ()) {
+                int i = members.get ();
+                double weight = sparse.getWeight (i);
+                for (int p = sparse.getRowStart (i), end = sparse.getRowEnd (i); p < end; ++p) {
+                    sum[sparse.getColumn (p)] += sparse.getValue (p) * weight;
+                }
+                total += weight;
+            }
+            newCentroids[cluster] = (total > 0) ? Tuple.scale (new Tuple (sum), 1.0 / total) : centroids[cluster];
+        }
+        if (listener != null) {
+            listener.phase (this, "update", System.nanoTime () - start);
+        }
+        return newCentroids;
     }
 
-    @Override
-    public Tuple[] getCluster (int i) {
-        // naive scan of the full list
-        List<Tuple> list = new ArrayList<> ();
-
-        // an exhaustive search over all the tuples to find tuples in the cluster
-        for (int j = 0, n = dataSet.getN (); j < n; ++j) {
-            if (assign[j] == i) {
-                list.add (dataSet.get (j));
+    // the centroid of a cluster where each tuple counts as its weight, or null if the cluster has
+    // no weight at all
+    private Tuple weightedAverage (int cluster) {
+        int k = dataSet.getK ();
+        double[] sum = new double[k];
+        double total = 0;
+        IntBuffer members = getClusterIndices (cluster);
+        while (members.hasRemaining ()) {
+            int i = members.get ();
+            double weight = dataSet.getWeight (i);
+            double[] values = dataSet.get (i).getValues ();
+            for (int j = 0; j < k; ++j) {
+                sum[j] += values[j] * weight;
             }
+            total += weight;
         }
+        return (total > 0) ? Tuple.scale (new Tuple (sum), 1.0 / total) : null;
+    }
 
-        return list.toArray (new Tuple[list.size ()]);
+    public Tuple[] getCentroids () {
+        return clusterCentroids;
+    }
+
+    public Codebook getCodebook () {
+        return new Codebook (clusterCentroids);
+    }
+
+    @Override
+    public int getClusterCount () {
+        return clusterCount;
     }
 }
@@ -0,0 +1,47 @@
+package com.brettonw.math;
+
+import java.util.Random;
+
+// random points in boxes, for the tests that need something to cluster. everything is drawn from
+// a seeded generator, so a failing run can be repeated
+class ClusterFixture {
+    static final long SEED = 0x5eed1e55L;
+
+    // three 2D boxes, each fairly well separated
+    static final Bound[][] THREE_BOXES = new Bound[][] {
+            new Bound[] {new Bound (10, 20), new Bound (10, 30)},
+            new Bound[] {new Bound (15, 25), new Bound (60, 80)},
+            new Bound[] {new Bound (65, 90), new Bound (40, 50)}
+    };
+
+    // n points, each uniform in a box picked at random. the box each point came from goes in box,
+    // if it isn't null
+    static Tuple[] makeTuples (Bound[][] bounds, int n, Random random, int[] box) {
+        int k = bounds[0].length;
+        Tuple[] tuples = new Tuple[n];
+        double[] canonical = new double[k];
+        for (int i = 0; i < n; ++i) {
+            int pick = random.nextInt (bounds.length);
+            for (int j = 0; j < k; ++j) {
+                canonical[j] = random.nextDouble ();
+            }
+            tuples[i] = Bound.mapFromCanonical (bounds[pick], canonical);
+            if (box != null) {
+                box[i] = pick;
+            }
+        }
+        return tuples;
+    }
+
+    static Tuple[] makeTuples (Bound[][] bounds, int n, long seed) {
+        return makeTuples (bounds, n, new Random (seed), null);
+    }
+
+    static Tuple[] makeTuples (int n, long seed) {
+        return makeTuples (THREE_BOXES, n, seed);
+    }
+
+    static Tuple[] makeTuples (int n) {
+        return makeTuples (THREE_BOXES, n, SEED);
+    }
+}
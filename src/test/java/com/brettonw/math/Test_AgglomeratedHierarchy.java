@@ -2,11 +2,193 @@ package com.brettonw.math;
 
 import org.junit.Test;
 
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import static junit.framework.TestCase.assertTrue;
 
 public class Test_AgglomeratedHierarchy {
+    private static final int[] LINKAGES = {
+            AgglomeratedHierarchy.USE_MIN_DISTANCE,
+            AgglomeratedHierarchy.USE_MAX_DISTANCE,
+            AgglomeratedHierarchy.USE_MEAN_DISTANCE,
+            AgglomeratedHierarchy.USE_CENTROID_DISTANCE,
+            AgglomeratedHierarchy.USE_WARD_DISTANCE
+    };
+
+    // the distance between two clusters straight from the definition of the linkage, from the
+    // samples themselves. a sample with weight w counts as w samples, and null weights count every
+    // sample once
+    private static double referenceDistance (Tuple[] tuples, double[] weights, int linkage, List<Integer> a, List<Integer> b) {
+        double aWeight = weight (weights, a), bWeight = weight (weights, b);
+        switch (linkage) {
+            case AgglomeratedHierarchy.USE_CENTROID_DISTANCE:
+                return Tuple.deltaNorm (centroid (tuples, weights, a), centroid (tuples, weights, b));
+            case AgglomeratedHierarchy.USE_WARD_DISTANCE: {
+                double sizes = (2.0 * aWeight * bWeight) / (aWeight + bWeight);
+                return Math.sqrt (sizes) * Tuple.deltaNorm (centroid (tuples, weights, a), centroid (tuples, weights, b));
+            }
+        }
+        double min = Double.MAX_VALUE, max = 0, sum = 0;
+        for (int i : a) {
+            for (int j : b) {
+                double distance = Tuple.deltaNorm (tuples[i], tuples[j]);
+                min = Math.min (min, distance);
+                max = Math.max (max, distance);
+                sum += distance * weight (weights, i) * weight (weights, j);
+            }
+        }
+        switch (linkage) {
+            case AgglomeratedHierarchy.USE_MIN_DISTANCE: return min;
+            case AgglomeratedHierarchy.USE_MAX_DISTANCE: return max;
+        }
+        return sum / (aWeight * bWeight);
+    }
+
+    private static double weight (double[] weights, int i) {
+        return (weights != null) ? weights[i] : 1;
+    }
+
+    private static double weight (double[] weights, List<Integer> members) {
+        double total = 0;
+        for (int i : members) {
+            total += weight (weights, i);
+        }
+        return total;
+    }
+
+    private static Tuple centroid (Tuple[] tuples, double[] weights, List<Integer> members) {
+        Tuple[] scaled = new Tuple[members.size ()];
+        for (int i = 0; i < scaled.length; ++i) {
+            scaled[i] = Tuple.scale (tuples[members.get (i)], weight (weights, members.get (i)));
+        }
+        return Tuple.scale (Tuple.add (scaled), 1.0 / weight (weights, members));
+    }
+
+    // a plain O(n^3) agglomeration, every step recomputes the distance between every pair of
+    // clusters from the samples and merges the nearest pair, so there is no chain, heap, or
+    // distance update to get wrong. the heights of the merges go in heights, in the order they
+    // happened, and the members of each merge are returned in the same order
+    private static List<int[]> referenceMerges (Tuple[] tuples, double[] weights, int linkage, double[] heights) {
+        List<List<Integer>> clusters = new ArrayList<> ();
+        for (int i = 0; i < tuples.length; ++i) {
+            List<Integer> cluster = new ArrayList<> ();
+            cluster.add (i);
+            clusters.add (cluster);
+        }
+        List<int[]> merges = new ArrayList<> ();
+        while (clusters.size () > 1) {
+            int nearestA = -1, nearestB = -1;
+            double nearest = Double.MAX_VALUE;
+            for (int a = 0; a < clusters.size (); ++a) {
+                for (int b = a + 1; b < clusters.size (); ++b) {
+                    double distance = referenceDistance (tuples, weights, linkage, clusters.get (a), clusters.get (b));
+                    if (distance < nearest) {
+                        nearest = distance;
+                        nearestA = a;
+                        nearestB = b;
+                    }
+                }
+            }
+            List<Integer> merged = clusters.remove (nearestB);
+            merged.addAll (clusters.remove (nearestA));
+            heights[merges.size ()] = nearest;
+            merges.add (merged.stream ().mapToInt (Integer::intValue).sorted ().toArray ());
+            clusters.add (merged);
+        }
+        return merges;
+    }
+
+    @Test
+    public void testMergeHeights () {
+        // every linkage on the distance matrix engine, and single linkage on the spanning tree as
+        // well, merges at the same heights as the reference
+        Tuple[] tuples = ClusterFixture.makeTuples (120);
+        DataSet dataSet = new DataSet (tuples);
+        int n = tuples.length;
+        for (int linkage : LINKAGES) {
+            double[] expect = new double[n - 1];
+            referenceMerges (tuples, null, linkage, expect);
+            Arrays.sort (expect);
+            boolean[] engines = (linkage == AgglomeratedHierarchy.USE_MIN_DISTANCE) ? new boolean[] {false, true} : new boolean[] {false};
+            for (boolean useSpanningTree : engines) {
+                Dendrogram dendrogram = new AgglomeratedHierarchy (dataSet).setLinkage (linkage).setUseSpanningTree (useSpanningTree).fit ().getDendrogram ();
+                double[] heights = new double[n - 1];
+                for (int i = 0; i < (n - 1); ++i) {
+                    heights[i] = dendrogram.getDistance (i);
+                }
+                Arrays.sort (heights);
+                for (int i = 0; i < (n - 1); ++i) {
+                    assertTrue (Math.abs (heights[i] - expect[i]) <= (1.0e-9 * Math.max (1, expect[i])));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMergeMembers () {
+        // the distance updates build the same tree as the reference, not just one with the same
+        // heights - every merge of the reference is a cluster of the dendrogram with the same
+        // members
+        Tuple[] tuples = ClusterFixture.makeTuples (120);
+        DataSet dataSet = new DataSet (tuples);
+        int n = tuples.length;
+        for (int linkage : LINKAGES) {
+            List<int[]> expect = referenceMerges (tuples, null, linkage, new double[n - 1]);
+            Dendrogram dendrogram = new AgglomeratedHierarchy (dataSet).setLinkage (linkage).setUseSpanningTree (false).fit ().getDendrogram ();
+            Set<String> clusters = new HashSet<> ();
+            for (int id = n; id < ((2 * n) - 1); ++id) {
+                IntBuffer members = dendrogram.getMembers (id);
+                int[] sorted = new int[members.remaining ()];
+                members.get (sorted);
+                Arrays.sort (sorted);
+                clusters.add (Arrays.toString (sorted));
+            }
+            for (int[] merge : expect) {
+                assertTrue (clusters.contains (Arrays.toString (merge)));
+            }
+        }
+    }
+
+    @Test
+    public void testWeightedMergeHeights () {
+        // a weighted sample counts as that many samples in every linkage, and the centroids are
+        // weighted the same way
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] tuples = ClusterFixture.makeTuples (ClusterFixture.THREE_BOXES, 80, random, null);
+        int n = tuples.length;
+        double[] weights = new double[n];
+        for (int i = 0; i < n; ++i) {
+            weights[i] = 1 + random.nextInt (20);
+        }
+        DataSet dataSet = new DataSet (tuples).setWeights (weights);
+        for (int linkage : LINKAGES) {
+            double[] expect = new double[n - 1];
+            referenceMerges (tuples, weights, linkage, expect);
+            Arrays.sort (expect);
+            AgglomeratedHierarchy agglomeratedHierarchy = new AgglomeratedHierarchy (dataSet).setLinkage (linkage).setUseSpanningTree (false).fit ();
+            Dendrogram dendrogram = agglomeratedHierarchy.getDendrogram ();
+            double[] heights = new double[n - 1];
+            for (int i = 0; i < (n - 1); ++i) {
+                heights[i] = dendrogram.getDistance (i);
+            }
+            Arrays.sort (heights);
+            for (int i = 0; i < (n - 1); ++i) {
+                assertTrue (Math.abs (heights[i] - expect[i]) <= (1.0e-9 * Math.max (1, expect[i])));
+            }
+
+            List<Integer> all = new ArrayList<> ();
+            for (int i = 0; i < n; ++i) {
+                all.add (i);
+            }
+            assertTrue (Tuple.deltaNorm (agglomeratedHierarchy.getCentroid ((2 * n) - 2), centroid (tuples, weights, all)) < 1.0e-9);
+        }
+    }
 
     @Test
     public void testAh () {
@@ -37,9 +219,44 @@ public class Test_AgglomeratedHierarchy {
 
         // now create the solver, and test that it correctly clusters...
         DataSet dataSet = new DataSet (tuples);
-        AgglomeratedHierarchy agglomeratedHierarchy = new AgglomeratedHierarchy (dataSet, AgglomeratedHierarchy.USE_MIN_DISTANCE);
+        AgglomeratedHierarchy agglomeratedHierarchy = new AgglomeratedHierarchy (dataSet).setCacheSampleDistances (true).setLinkage (AgglomeratedHierarchy.USE_MIN_DISTANCE).fit ();
         assertTrue (agglomeratedHierarchy.getClusterCount () == n);
 
+        // and refit with every other linkage, reusing the sample distances
+        int[] linkages = {
+                AgglomeratedHierarchy.USE_MAX_DISTANCE,
+                AgglomeratedHierarchy.USE_MEAN_DISTANCE,
+                AgglomeratedHierarchy.USE_CENTROID_DISTANCE,
+                AgglomeratedHierarchy.USE_WARD_DISTANCE
+        };
+        for (int linkage : linkages) {
+            agglomeratedHierarchy.setLinkage (linkage).fit ();
+            assertTrue (agglomeratedHierarchy.getClusterCount () == n);
+
+            // the three boxes are well separated, so a cut into three clusters should find them
+            // (except centroid linkage, which isn't guaranteed to be monotonic)
+            if (linkage != AgglomeratedHierarchy.USE_CENTROID_DISTANCE) {
+                agglomeratedHierarchy.cutAtCount (c);
+                assertTrue (agglomeratedHierarchy.getClusterCount () == c);
+                int total = 0;
+                for (int i = 0; i < c; ++i) {
+                    total += agglomeratedHierarchy.getCluster (i).length;
+                }
+                assertTrue (total == n);
+
+                // the root holds every sample, and its centroid is the mean of the data
+                int root = (2 * n) - 2;
+                assertTrue (agglomeratedHierarchy.getMembers (root).remaining () == n);
+                double[] mean = new double[k];
+                for (Tuple tuple : tuples) {
+                    for (int j = 0; j < k; ++j) {
+                        mean[j] += tuple.getValues ()[j] / n;
+                    }
+                }
+                assertTrue (Tuple.deltaNormSq (new Tuple (mean), agglomeratedHierarchy.getCentroid (root)) < 1.0e-12);
+            }
+        }
+
         /*
         BagArray clustersBagArray = agglomeratedHierarchy.export ();
         File outputFile = new File ("target", "vq.json");
@@ -0,0 +1,59 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertTrue;
+
+public class Test_ApproximateHierarchy {
+
+    @Test
+    public void testApproximateHierarchy () {
+        // a whole bunch of random 2D points in 3 clusters (each fairly well separated)
+        Bound[][] bounds = ClusterFixture.THREE_BOXES;
+        int c = bounds.length;
+        int n = 5000;
+        Tuple[] tuples = ClusterFixture.makeTuples (n);
+        DataSet dataSet = new DataSet (tuples);
+
+        int[] representations = { ApproximateHierarchy.REPRESENT_BY_SAMPLE, ApproximateHierarchy.REPRESENT_BY_CODEBOOK };
+        for (int representation : representations) {
+            ApproximateHierarchy approximateHierarchy = new ApproximateHierarchy (dataSet)
+                    .setLinkage (AgglomeratedHierarchy.USE_WARD_DISTANCE)
+                    .setRepresentation (representation, 200)
+                    .setSeed (ClusterFixture.SEED)
+                    .fit ();
+            // a codebook centroid with no samples is dropped
+            int representativeCount = approximateHierarchy.getRepresentativeCount ();
+            assertTrue ((representativeCount <= 200) && (representativeCount > 100));
+            for (int i = 0; i < representativeCount; ++i) {
+                assertTrue (approximateHierarchy.getMembers (i).remaining () > 0);
+            }
+
+            // the same seed picks the same representatives
+            int[] labels = approximateHierarchy.getLabels ();
+            assertTrue (Arrays.equals (approximateHierarchy.fit ().getLabels (), labels));
+
+            // the root of the representatives' tree covers every sample
+            int root = (2 * representativeCount) - 2;
+            assertTrue (approximateHierarchy.getMembers (root).remaining () == n);
+
+            // a cut into three clusters recovers the boxes
+            approximateHierarchy.cutAtCount (c);
+            assertTrue (approximateHierarchy.getClusterCount () == c);
+            int[] labelOfBox = { -1, -1, -1 };
+            for (int i = 0; i < c; ++i) {
+                for (Tuple tuple : approximateHierarchy.getCluster (i)) {
+                    // find which box the tuple came from
+                    for (int j = 0; j < c; ++j) {
+                        if (Bound.contains (bounds[j], tuple)) {
+                            assertTrue ((labelOfBox[j] < 0) || (labelOfBox[j] == i));
+                            labelOfBox[j] = i;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_ClusterAlgorithm {
+
+    private DataSet makeDataSet (int n) {
+        return new SpatiallyIndexed (ClusterFixture.makeTuples (n));
+    }
+
+    // every sample is in at most one cluster, the indices in a cluster are in ascending order, and
+    // they match the tuples getCluster returns. returns the number of samples in any cluster
+    private int checkIndex (ClusterAlgorithm clusterAlgorithm) {
+        DataSet dataSet = clusterAlgorithm.getDataSet ();
+        boolean[] seen = new boolean[dataSet.getN ()];
+        int total = 0;
+        for (int i = 0, clusterCount = clusterAlgorithm.getClusterCount (); i < clusterCount; ++i) {
+            IntBuffer indices = clusterAlgorithm.getClusterIndices (i);
+            Tuple[] tuples = clusterAlgorithm.getCluster (i);
+            assertTrue (indices.remaining () == clusterAlgorithm.getClusterSize (i));
+            assertTrue (indices.remaining () == tuples.length);
+            for (int j = 0, last = -1; j < tuples.length; ++j) {
+                int index = indices.get (j);
+                assertTrue (index > last);
+                assertTrue (! seen[index]);
+                assertTrue (dataSet.get (index) == tuples[j]);
+                seen[index] = true;
+                last = index;
+            }
+            total += tuples.length;
+        }
+        return total;
+    }
+
+    @Test
+    public void testIndex () {
+        int n = 2000;
+        DataSet dataSet = makeDataSet (n);
+
+        // vector quantization puts every sample in a cluster, the one with its nearest centroid
+        MiniBatchVectorQuantization quantization = new MiniBatchVectorQuantization (dataSet, 5, 100, 50);
+        assertTrue (checkIndex (quantization) == n);
+        Codebook codebook = quantization.getCodebook ();
+        for (int i = 0; i < quantization.getClusterCount (); ++i) {
+            IntBuffer indices = quantization.getClusterIndices (i);
+            while (indices.hasRemaining ()) {
+                assertTrue (codebook.assign (dataSet.get (indices.get ())) == i);
+            }
+        }
+
+        // density based scan can leave some samples out as noise
+        DensityBasedScan densityBasedScan = new DensityBasedScan (dataSet, 1.0, 4);
+        assertTrue (checkIndex (densityBasedScan) <= n);
+    }
+
+    @Test
+    public void testNotFit () {
+        // the membership is asked for before there is any
+        ClusterAlgorithm quantization = new MiniBatchVectorQuantization (makeDataSet (100)).setClusterCount (5);
+        int refused = 0;
+        try {
+            quantization.getCluster (0);
+        } catch (IllegalStateException exception) {
+            ++refused;
+        }
+        try {
+            quantization.getClusterIndices (0);
+        } catch (IllegalStateException exception) {
+            ++refused;
+        }
+        try {
+            quantization.getClusterSize (0);
+        } catch (IllegalStateException exception) {
+            ++refused;
+        }
+        try {
+            quantization.getLabels ();
+        } catch (IllegalStateException exception) {
+            ++refused;
+        }
+        assertTrue (refused == 4);
+    }
+}
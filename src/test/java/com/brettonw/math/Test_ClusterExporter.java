@@ -0,0 +1,99 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_ClusterExporter {
+
+    @Test
+    public void testExport () throws IOException {
+        // a whole bunch of random 2D points in 3 clusters (each fairly well separated)
+        int c = ClusterFixture.THREE_BOXES.length;
+        int k = ClusterFixture.THREE_BOXES[0].length;
+        int n = 20000;
+        Tuple[] tuples = ClusterFixture.makeTuples (n);
+        DataSet dataSet = new DataSet (tuples);
+        MiniBatchVectorQuantization quantization = new MiniBatchVectorQuantization (dataSet, c, 100, 50);
+        int[] labels = quantization.getLabels ();
+
+        // binary, with the values
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream ();
+        quantization.export (outputStream, ClusterExporter.EXPORT_BINARY, true);
+        ByteBuffer buffer = ByteBuffer.wrap (outputStream.toByteArray ()).order (ByteOrder.LITTLE_ENDIAN);
+        assertTrue (buffer.remaining () == (2 * Integer.BYTES) + (n * (Integer.BYTES + (k * Double.BYTES))));
+        assertTrue (buffer.getInt () == n);
+        assertTrue (buffer.getInt () == k);
+        for (int i = 0; i < n; ++i) {
+            assertTrue (buffer.getInt () == labels[i]);
+            for (int j = 0; j < k; ++j) {
+                assertTrue (buffer.getDouble () == tuples[i].getValues ()[j]);
+            }
+        }
+
+        // csv, with the values
+        outputStream = new ByteArrayOutputStream ();
+        quantization.export (outputStream, ClusterExporter.EXPORT_CSV, true);
+        String[] lines = new String (outputStream.toByteArray (), StandardCharsets.US_ASCII).split ("\n");
+        assertTrue (lines.length == n + 1);
+        assertTrue (lines[0].equals ("label,v0,v1"));
+        for (int i = 0; i < n; ++i) {
+            String[] fields = lines[i + 1].split (",");
+            assertTrue (Integer.parseInt (fields[0]) == labels[i]);
+            for (int j = 0; j < k; ++j) {
+                assertTrue (Double.parseDouble (fields[j + 1]) == tuples[i].getValues ()[j]);
+            }
+        }
+
+        // line-delimited json, just the labels
+        outputStream = new ByteArrayOutputStream ();
+        quantization.export (outputStream, ClusterExporter.EXPORT_NDJSON, false);
+        lines = new String (outputStream.toByteArray (), StandardCharsets.US_ASCII).split ("\n");
+        assertTrue (lines.length == n);
+        for (int i = 0; i < n; ++i) {
+            assertTrue (lines[i].equals ("{\"label\":" + labels[i] + "}"));
+        }
+    }
+
+    @Test
+    public void testExportNonFinite () throws IOException {
+        // json has no way to write these, so they come out as null
+        Tuple[] tuples = {
+                new Tuple (1.0, Double.NaN),
+                new Tuple (Double.POSITIVE_INFINITY, 2.0),
+                new Tuple (Double.NEGATIVE_INFINITY, 0.5)
+        };
+        DensityBasedScan densityBasedScan = new DensityBasedScan (new DataSet (tuples)).setLabels (new int[] {0, -1, 0});
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream ();
+        densityBasedScan.export (outputStream, ClusterExporter.EXPORT_NDJSON, true);
+        String[] lines = new String (outputStream.toByteArray (), StandardCharsets.US_ASCII).split ("\n");
+        assertTrue (lines.length == 3);
+        assertTrue (lines[0].equals ("{\"label\":0,\"values\":[1.0,null]}"));
+        assertTrue (lines[1].equals ("{\"label\":-1,\"values\":[null,2.0]}"));
+        assertTrue (lines[2].equals ("{\"label\":0,\"values\":[null,0.5]}"));
+    }
+
+    @Test
+    public void testExportUnknownFormat () throws IOException {
+        // an empty data set writes no samples, the format is still refused
+        DensityBasedScan densityBasedScan = new DensityBasedScan (new DataSet (new Tuple[0])).setLabels (new int[0]);
+        boolean refused = false;
+        try {
+            densityBasedScan.export (new ByteArrayOutputStream (), 3, false);
+        } catch (IllegalArgumentException exception) {
+            refused = true;
+        }
+        assertTrue (refused);
+
+        // the known formats are fine with it
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream ();
+        densityBasedScan.export (outputStream, ClusterExporter.EXPORT_CSV, false);
+        assertTrue (new String (outputStream.toByteArray (), StandardCharsets.US_ASCII).equals ("label\n"));
+    }
+}
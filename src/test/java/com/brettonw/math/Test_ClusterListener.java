@@ -0,0 +1,104 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_ClusterListener {
+
+    // tallies everything it hears
+    private static class Tally implements ClusterListener {
+        Map<String, Long> phases = new HashMap<> ();
+        int iterations;
+        double lastDelta = -1;
+        long reassigned;
+        long rangeQueries;
+        long reportedRangeQueries;
+        long cellsVisited;
+        long pointsScanned;
+        long found;
+        long distanceEvaluations;
+
+        @Override
+        public void phase (Object source, String phase, long nanoseconds) {
+            assertTrue (nanoseconds >= 0);
+            phases.merge (phase, 1L, Long::sum);
+        }
+
+        @Override
+        public void iteration (Object source, int iteration, double delta, int reassigned) {
+            assertTrue (iteration == iterations++);
+            lastDelta = delta;
+            this.reassigned += reassigned;
+        }
+
+        @Override
+        public void rangeQuery (Object source, int cellsVisited, int pointsScanned, int found) {
+            ++rangeQueries;
+            this.cellsVisited += cellsVisited;
+            this.pointsScanned += pointsScanned;
+            this.found += found;
+        }
+
+        @Override
+        public void distanceEvaluations (Object source, long count) {
+            distanceEvaluations += count;
+        }
+
+        @Override
+        public void rangeQueries (Object source, long count) {
+            reportedRangeQueries += count;
+        }
+    }
+
+    @Test
+    public void testListener () {
+        int n = 2000;
+        Tuple[] tuples = ClusterFixture.makeTuples (n);
+
+        // the index build, and every range query the scan issues
+        Tally tally = new Tally ();
+        SpatiallyIndexed dataSet = new SpatiallyIndexed (tuples);
+        dataSet.setListener (tally).setTuples (tuples, Bound.getBounds (tuples));
+        assertTrue (tally.phases.get ("sort") == 1);
+        assertTrue (tally.phases.get ("index") == 1);
+        DensityBasedScan densityBasedScan = new DensityBasedScan (dataSet).setRange (2.0).setMinPts (4);
+        densityBasedScan.setListener (tally);
+        densityBasedScan.fit ();
+        assertTrue (tally.rangeQueries > 0);
+        assertTrue (tally.rangeQueries == tally.reportedRangeQueries);
+        assertTrue (tally.cellsVisited >= tally.rangeQueries);
+        assertTrue (tally.pointsScanned >= tally.found);
+        assertTrue (tally.phases.get ("scan") == 1);
+
+        // every iteration of k-means, the last one with no movement
+        tally = new Tally ();
+        VectorQuantization vectorQuantization = new VectorQuantization (new DataSet (tuples));
+        vectorQuantization.setClusterCount (3).setListener (tally);
+        vectorQuantization.fit ();
+        assertTrue (tally.iterations > 0);
+        assertTrue (tally.lastDelta == 0);
+        assertTrue (tally.reassigned >= n);
+        assertTrue (tally.distanceEvaluations >= (long) n * tally.iterations);
+        assertTrue (tally.phases.get ("assign") == tally.iterations);
+
+        // the phases of the hierarchy
+        tally = new Tally ();
+        AgglomeratedHierarchy agglomeratedHierarchy = new AgglomeratedHierarchy (new DataSet (ClusterFixture.makeTuples (300)));
+        agglomeratedHierarchy.setLinkage (AgglomeratedHierarchy.USE_WARD_DISTANCE).setListener (tally);
+        agglomeratedHierarchy.fit ();
+        assertTrue (tally.phases.get ("distances") == 1);
+        assertTrue (tally.phases.get ("merge") == 1);
+        assertTrue (tally.distanceEvaluations == (300 * 299) / 2);
+
+        // nothing is reported once the listener is gone
+        tally = new Tally ();
+        dataSet.setListener (null);
+        densityBasedScan.setListener (null);
+        densityBasedScan.fit ();
+        assertTrue (tally.rangeQueries == 0);
+    }
+}
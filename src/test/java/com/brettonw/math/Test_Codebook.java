@@ -0,0 +1,44 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_Codebook {
+    @Test
+    public void testCodebook () {
+        // make a codebook of random centroids in a moderately high dimension
+        int c = 200;
+        int k = 8;
+        Tuple[] centroids = new Tuple[c];
+        for (int i = 0; i < c; ++i) {
+            centroids[i] = Tuple.scale (Tuple.random (k), 100.0);
+        }
+        Codebook codebook = new Codebook (centroids);
+        assertTrue (codebook.getClusterCount () == c);
+        assertTrue (Utility.close (Tuple.deltaNorm (codebook.getCentroid (17), centroids[17]), 0));
+
+        // assign a bunch of random points, and confirm against an exhaustive search
+        int n = 1000;
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            tuples[i] = Tuple.scale (Tuple.random (k), 100.0);
+        }
+        int[] assign = new int[n];
+        codebook.assignBatch (tuples, assign);
+        for (int i = 0; i < n; ++i) {
+            double nearestNormSq = Double.MAX_VALUE;
+            for (Tuple centroid : centroids) {
+                nearestNormSq = Math.min (nearestNormSq, Tuple.deltaNormSq (centroid, tuples[i]));
+            }
+            assertTrue (assign[i] == codebook.assign (tuples[i]));
+            assertTrue (Utility.close (Tuple.deltaNormSq (centroids[assign[i]], tuples[i]), nearestNormSq));
+        }
+
+        // a point with a NaN in it still gets some centroid
+        double[] values = tuples[0].getValues ().clone ();
+        values[3] = Double.NaN;
+        int nan = codebook.assign (values);
+        assertTrue ((nan >= 0) && (nan < c));
+    }
+}
@@ -0,0 +1,103 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_DataSetLoader {
+
+    @Test
+    public void testParseDouble () {
+        String[] values = {
+                "0", "-0", "1", "-1.5", "+2.25", "3.14159", "0.1", "123456789.012345", " 42 ", "\"7.5\"",
+                "1e10", "-2.5E-3", "0.30000000000000004", "12345678901234567890", "NaN"
+        };
+        for (String value : values) {
+            byte[] bytes = value.getBytes (StandardCharsets.US_ASCII);
+            double parsed = DataSetLoader.parseDouble (bytes, 0, bytes.length);
+            double expected = Double.parseDouble (value.trim ().replace ("\"", ""));
+            assertTrue (Double.compare (parsed, expected) == 0);
+        }
+    }
+
+    private Tuple[] makeTuples (int n, int k) {
+        Random random = new Random ();
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            double[] values = new double[k];
+            for (int j = 0; j < k; ++j) {
+                // a mix of short decimals and full precision doubles
+                values[j] = ((i % 2) == 0) ? Math.round (random.nextDouble () * 1.0e6) / 1.0e3 : (random.nextDouble () - 0.5) * 1.0e4;
+            }
+            tuples[i] = new Tuple (values);
+        }
+        return tuples;
+    }
+
+    private void checkDataSet (DataSet dataSet, Tuple[] tuples, int... columns) {
+        assertTrue (dataSet.getN () == tuples.length);
+        assertTrue (dataSet.getK () == columns.length);
+        for (int i = 0; i < tuples.length; ++i) {
+            for (int j = 0; j < columns.length; ++j) {
+                double value = tuples[i].getValues ()[columns[j]];
+                assertTrue (dataSet.get (i).getValues ()[j] == value);
+                assertTrue (dataSet.getBounds ()[j].contains (value));
+            }
+        }
+    }
+
+    @Test
+    public void testCsv () throws IOException {
+        int n = 200000, k = 3;
+        Tuple[] tuples = makeTuples (n, k);
+        Path path = Files.createTempFile ("dataset", ".csv");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter (path)) {
+                writer.write ("x,y,z\n");
+                for (Tuple tuple : tuples) {
+                    double[] values = tuple.getValues ();
+                    writer.write (values[0] + "," + values[1] + "," + values[2] + "\r\n");
+                }
+            }
+
+            // the file is big enough to split into several chunks, and the answer shouldn't change
+            checkDataSet (new DataSetLoader ().setHeader (true).setParallel (false).loadCsv (path), tuples, 0, 1, 2);
+            checkDataSet (new DataSetLoader ().setHeader (true).setChunkSize (64 * 1024).loadCsv (path), tuples, 0, 1, 2);
+            checkDataSet (new DataSetLoader ().setColumns ("z", "x").setChunkSize (100 * 1000).loadCsv (path), tuples, 2, 0);
+            checkDataSet (new DataSetLoader ().setHeader (true).setColumns (1).setSpatiallyIndexed (false).loadCsv (path), tuples, 1);
+        } finally {
+            Files.delete (path);
+        }
+    }
+
+    @Test
+    public void testBinary () throws IOException {
+        int n = 300000, k = 2;
+        Tuple[] tuples = makeTuples (n, k);
+        Path path = Files.createTempFile ("dataset", ".bin");
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate ((2 * Integer.BYTES) + (n * k * Double.BYTES)).order (ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt (n).putInt (k);
+            for (Tuple tuple : tuples) {
+                for (double value : tuple.getValues ()) {
+                    buffer.putDouble (value);
+                }
+            }
+            Files.write (path, buffer.array ());
+
+            checkDataSet (new DataSetLoader ().setParallel (false).loadBinary (path), tuples, 0, 1);
+            checkDataSet (new DataSetLoader ().setChunkSize (64 * 1024).loadBinary (path), tuples, 0, 1);
+        } finally {
+            Files.delete (path);
+        }
+    }
+}
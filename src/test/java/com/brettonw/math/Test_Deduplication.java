@@ -0,0 +1,82 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_Deduplication {
+    @Test
+    public void testDeduplication () {
+        // random 2D points in 3 clusters (each fairly well separated), where every point is
+        // repeated a random number of times as separate rows
+        int c = ClusterFixture.THREE_BOXES.length;
+        int k = ClusterFixture.THREE_BOXES[0].length;
+        int distinct = 2000;
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] points = ClusterFixture.makeTuples (ClusterFixture.THREE_BOXES, distinct, random, null);
+        int[] repeats = new int[distinct];
+        int n = 0;
+        for (int i = 0; i < distinct; ++i) {
+            repeats[i] = 1 + random.nextInt (10);
+            n += repeats[i];
+        }
+        Tuple[] rows = new Tuple[n];
+        for (int i = 0, row = 0; i < distinct; ++i) {
+            for (int j = 0; j < repeats[i]; ++j) {
+                rows[row++] = new Tuple (points[i]);
+            }
+        }
+        for (int i = n - 1; i > 0; --i) {
+            int j = random.nextInt (i + 1);
+            Tuple swap = rows[i]; rows[i] = rows[j]; rows[j] = swap;
+        }
+
+        for (boolean spatiallyIndexed : new boolean[] {false, true}) {
+            // the rows collapse to the distinct points, weighted by how often they repeat
+            Deduplication deduplication = new Deduplication (rows, spatiallyIndexed);
+            DataSet dataSet = deduplication.getDataSet ();
+            assertTrue (dataSet.getN () == distinct);
+            assertTrue (deduplication.getRowCount () == n);
+            double total = 0;
+            for (int i = 0; i < distinct; ++i) {
+                total += dataSet.getWeight (i);
+            }
+            assertTrue (total == n);
+            for (int row = 0; row < n; ++row) {
+                Tuple point = dataSet.get (deduplication.getPoint (row));
+                assertTrue (Tuple.deltaNormSq (point, rows[row]) == 0);
+            }
+
+            // DBSCAN counts the weights toward minPts, so a point repeated often enough is a core
+            // point all on its own, and the labels go back out to every row
+            DensityBasedScan densityBasedScan = new DensityBasedScan (dataSet, 2.0, 2);
+            int[] labels = deduplication.expand (densityBasedScan);
+            assertTrue (labels.length == n);
+            for (int row = 0; row < n; ++row) {
+                assertTrue (labels[row] == densityBasedScan.getLabels ()[deduplication.getPoint (row)]);
+            }
+
+            // the weighted centroids are the same as the centroids of the rows
+            VectorQuantization vectorQuantization = new VectorQuantization (dataSet, c);
+            Tuple[] centroids = vectorQuantization.getCentroids ();
+            int[] rowLabels = deduplication.expand (vectorQuantization);
+            for (int i = 0; i < c; ++i) {
+                double[] sum = new double[k];
+                int count = 0;
+                for (int row = 0; row < n; ++row) {
+                    if (rowLabels[row] == i) {
+                        for (int j = 0; j < k; ++j) {
+                            sum[j] += rows[row].getValues ()[j];
+                        }
+                        ++count;
+                    }
+                }
+                if (count > 0) {
+                    assertTrue (Tuple.deltaNorm (Tuple.scale (new Tuple (sum), 1.0 / count), centroids[i]) < 1.0e-6);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertTrue;
+
+public class Test_Dendrogram {
+
+    @Test
+    public void testDendrogram () {
+        // five samples, merged out of distance order: (0, 1) at 1, (3, 4) at 3, (2, 5) at 2, and
+        // then the last two clusters at 4
+        int n = 5;
+        int[] childA = { 0, 3, 2, 6 };
+        int[] childB = { 1, 4, 5, 7 };
+        double[] distance = { 1, 3, 2, 4 };
+        Dendrogram dendrogram = new Dendrogram (n, childA, childB, distance, true);
+
+        // sorted, the (2, 5) merge comes second, so its id is 6 and the (3, 4) merge is 7
+        assertTrue (dendrogram.getMergeCount () == n - 1);
+        double[] linkage = dendrogram.toLinkage ();
+        assertTrue (Arrays.equals (linkage, new double[] {
+                0, 1, 1, 2,
+                2, 5, 2, 3,
+                3, 4, 3, 2,
+                6, 7, 4, 5
+        }));
+
+        assertTrue (Arrays.equals (dendrogram.cutAtCount (5), new int[] { 0, 1, 2, 3, 4 }));
+        assertTrue (Arrays.equals (dendrogram.cutAtCount (3), new int[] { 0, 0, 0, 1, 2 }));
+        assertTrue (Arrays.equals (dendrogram.cutAtCount (1), new int[] { 0, 0, 0, 0, 0 }));
+        assertTrue (Arrays.equals (dendrogram.cutAtDistance (2.5), dendrogram.cutAtCount (3)));
+        assertTrue (Arrays.equals (dendrogram.cutAtDistance (0.5), dendrogram.cutAtCount (5)));
+
+        // several cuts in one pass, in any order, match the individual cuts
+        int[][] cuts = dendrogram.cutAtCounts (2, 4, 1, 3);
+        int[] counts = { 2, 4, 1, 3 };
+        for (int i = 0; i < counts.length; ++i) {
+            assertTrue (Arrays.equals (cuts[i], dendrogram.cutAtCount (counts[i])));
+        }
+
+        // every cluster's members are one contiguous range in leaf order, children inside parents
+        assertTrue (dendrogram.getMembers (8).remaining () == n);
+        for (int i = 0; i < dendrogram.getMergeCount (); ++i) {
+            int id = n + i;
+            int a = dendrogram.getChildA (i), b = dendrogram.getChildB (i);
+            assertTrue (dendrogram.getMembers (id).remaining () == dendrogram.getSize (id));
+            int start = dendrogram.getMembersStart (id);
+            int end = dendrogram.getMembersEnd (id);
+            assertTrue (start <= Math.min (dendrogram.getMembersStart (a), dendrogram.getMembersStart (b)));
+            assertTrue (end >= Math.max (dendrogram.getMembersEnd (a), dendrogram.getMembersEnd (b)));
+        }
+        int[] members = new int[3];
+        dendrogram.getMembers (6).get (members);
+        Arrays.sort (members);
+        assertTrue (Arrays.equals (members, new int[] { 0, 1, 2 }));
+    }
+}
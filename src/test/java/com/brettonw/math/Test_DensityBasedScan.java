@@ -53,4 +53,31 @@ public class Test_DensityBasedScan {
             writer.write (clustersBagArray.toString ());
         } catch (IOException exception) { }
     }
+
+    @Test
+    public void testDBScanRefit () {
+        // generate a whole bunch of random 2D points in 3 clusters (each fairly well separated)
+        DataSet dataSet = new SpatiallyIndexed (ClusterFixture.makeTuples (1000));
+
+        // fit with a cache of the neighborhoods, then sweep the parameters and confirm each refit
+        // matches a fresh run
+        DensityBasedScan cached = new DensityBasedScan (dataSet)
+                .setCacheNeighborhoods (true)
+                .setRange (3.0)
+                .setMinPts (2)
+                .fit ();
+        assertTrue (cached.getClusterCount () == 3);
+        double[] ranges = { 3.0, 2.0, 1.0 };
+        int[] minPtss = { 2, 4, 8 };
+        for (double range : ranges) {
+            for (int minPts : minPtss) {
+                cached.setRange (range).setMinPts (minPts).fit ();
+                DensityBasedScan fresh = new DensityBasedScan (dataSet, range, minPts);
+                assertTrue (cached.getClusterCount () == fresh.getClusterCount ());
+                for (int i = 0, end = fresh.getClusterCount (); i < end; ++i) {
+                    assertTrue (cached.getCluster (i).length == fresh.getCluster (i).length);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_DimensionReduction {
+    // random 12D points that really only vary in 3 dimensions, in 3 clusters, plus a little noise
+    private Tuple[] makeTuples (int n, Random random) {
+        Bound[][] bounds = new Bound[][] {
+                new Bound[] {new Bound (10, 20), new Bound (10, 30), new Bound (0, 10)},
+                new Bound[] {new Bound (15, 25), new Bound (60, 80), new Bound (30, 40)},
+                new Bound[] {new Bound (65, 90), new Bound (40, 50), new Bound (70, 80)}
+        };
+        int k = 12;
+        double[][] embedding = new double[k][3];
+        for (int j = 0; j < k; ++j) {
+            for (int l = 0; l < 3; ++l) {
+                embedding[j][l] = random.nextGaussian ();
+            }
+        }
+        Tuple[] latents = ClusterFixture.makeTuples (bounds, n, random, null);
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            double[] latent = latents[i].getValues ();
+            double[] values = new double[k];
+            for (int j = 0; j < k; ++j) {
+                values[j] = (random.nextGaussian () * 0.01);
+                for (int l = 0; l < 3; ++l) {
+                    values[j] += embedding[j][l] * latent[l];
+                }
+            }
+            tuples[i] = new Tuple (values);
+        }
+        return tuples;
+    }
+
+    @Test
+    public void testPrincipalComponents () {
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] tuples = makeTuples (10000, random);
+        DataSet exact = new DataSet (tuples.clone ());
+        DimensionReduction reduction = new DimensionReduction (DimensionReduction.REDUCE_BY_PCA, 3).setSeed (random.nextLong ());
+        ReducedSpatiallyIndexed dataSet = new ReducedSpatiallyIndexed (tuples, reduction);
+
+        // three components hold nearly all of the variance, and never lengthen a distance
+        assertTrue (reduction.getExplainedVariance () > 0.999);
+        for (int i = 1; i < 100; ++i) {
+            double reducedSq = Tuple.deltaNormSq (reduction.project (tuples[i - 1]), reduction.project (tuples[i]));
+            assertTrue (reducedSq <= (Tuple.deltaNormSq (tuples[i - 1], tuples[i]) * (1 + 1.0e-9)));
+        }
+
+        // so a range search in the reduced index misses nothing
+        double range = 10.0;
+        for (int query = 0; query < 20; ++query) {
+            Tuple locus = tuples[random.nextInt (tuples.length)];
+            int[] found = dataSet.rangeSearch (locus, range);
+            for (int i : found) {
+                assertTrue (Tuple.deltaNorm (tuples[i], locus) < range);
+            }
+            assertTrue (found.length == exact.rangeSearch (locus, range).length);
+        }
+    }
+
+    @Test
+    public void testPrincipalComponentsFarFromOrigin () {
+        // the same data a long way from the origin, where a covariance from raw sums of products
+        // loses everything to cancellation
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] tuples = makeTuples (10000, random);
+        for (int i = 0; i < tuples.length; ++i) {
+            double[] values = tuples[i].getValues ().clone ();
+            for (int j = 0; j < values.length; ++j) {
+                values[j] += 1.0e8;
+            }
+            tuples[i] = new Tuple (values);
+        }
+        DimensionReduction reduction = new DimensionReduction (DimensionReduction.REDUCE_BY_PCA, 3).setSeed (random.nextLong ()).fit (new DataSet (tuples));
+        assertTrue (reduction.getExplainedVariance () > 0.999);
+        for (int i = 1; i < 100; ++i) {
+            double reducedSq = Tuple.deltaNormSq (reduction.project (tuples[i - 1]), reduction.project (tuples[i]));
+            double fullSq = Tuple.deltaNormSq (tuples[i - 1], tuples[i]);
+            assertTrue ((reducedSq <= (fullSq * (1 + 1.0e-6))) && (reducedSq >= (fullSq * 0.99)));
+        }
+    }
+
+    @Test
+    public void testRandomProjection () {
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] tuples = makeTuples (10000, random);
+        DataSet exact = new DataSet (tuples.clone ());
+        DimensionReduction reduction = new DimensionReduction (DimensionReduction.REDUCE_BY_RANDOM_PROJECTION, 6).setSeed (random.nextLong ());
+        ReducedSpatiallyIndexed dataSet = new ReducedSpatiallyIndexed (tuples, reduction).setSlack (2.0);
+        assertTrue (reduction.getD () == 6);
+
+        // the results are exact, and with a generous slack most of the true ones are found
+        double range = 10.0;
+        long exactFound = 0, reducedFound = 0;
+        for (int query = 0; query < 20; ++query) {
+            Tuple locus = tuples[random.nextInt (tuples.length)];
+            int[] found = dataSet.rangeSearch (locus, range);
+            for (int i : found) {
+                assertTrue (Tuple.deltaNorm (tuples[i], locus) < range);
+            }
+            exactFound += exact.rangeSearch (locus, range).length;
+            reducedFound += found.length;
+        }
+        assertTrue (reducedFound >= (exactFound * 0.8));
+    }
+}
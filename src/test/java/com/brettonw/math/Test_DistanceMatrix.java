@@ -0,0 +1,99 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_DistanceMatrix {
+    @Test
+    public void testIndex () {
+        // the condensed index walks the upper triangle row by row without gaps
+        int n = 50;
+        long expected = 0;
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                assertTrue (DistanceMatrix.index (n, i, j) == expected);
+                assertTrue (DistanceMatrix.index (n, j, i) == expected);
+                ++expected;
+            }
+        }
+
+        // and doesn't overflow for matrices well beyond 2^31 entries
+        int big = 100000;
+        assertTrue (DistanceMatrix.index (big, big - 2, big - 1) == (((long) big * (big - 1)) / 2) - 1);
+    }
+
+    @Test
+    public void testStorage () {
+        int n = 100;
+        DistanceMatrix[] matrices = {
+                DistanceMatrix.onHeap (n, false),
+                DistanceMatrix.onHeap (n, true),
+                DistanceMatrix.offHeap (n, false),
+                DistanceMatrix.offHeap (n, true),
+                DistanceMatrix.mapped (n, false),
+        };
+        for (DistanceMatrix matrix : matrices) {
+            assertTrue (matrix.getSize () == (n * (n - 1)) / 2);
+            for (int i = 0; i < n; ++i) {
+                for (int j = i + 1; j < n; ++j) {
+                    matrix.set (i, j, i + (j / 1024.0));
+                }
+            }
+            for (int i = 0; i < n; ++i) {
+                for (int j = i + 1; j < n; ++j) {
+                    assertTrue (Utility.close (matrix.get (j, i), i + (j / 1024.0)));
+                }
+            }
+        }
+    }
+
+    private static DistanceMatrix[] allStorage (int n) {
+        return new DistanceMatrix[] {
+                DistanceMatrix.onHeap (n, false),
+                DistanceMatrix.onHeap (n, true),
+                DistanceMatrix.offHeap (n, false),
+                DistanceMatrix.offHeap (n, true),
+                DistanceMatrix.mapped (n, false)
+        };
+    }
+
+    @Test
+    public void testCopy () {
+        // every kind of storage copies into every other kind, in bulk when they match
+        int n = 100;
+        for (DistanceMatrix from : allStorage (n)) {
+            for (int i = 0; i < n; ++i) {
+                for (int j = i + 1; j < n; ++j) {
+                    from.set (i, j, i + (j / 1024.0));
+                }
+            }
+            for (DistanceMatrix to : allStorage (n)) {
+                to.copy (from);
+                for (int i = 0; i < n; ++i) {
+                    for (int j = i + 1; j < n; ++j) {
+                        assertTrue (Utility.close (to.get (i, j), i + (j / 1024.0)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testComputeDistances () {
+        // a high dimension makes for small tiles, so this covers several rows of tiles
+        int n = 300;
+        int k = 200;
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            tuples[i] = Tuple.random (k);
+        }
+        DataSet dataSet = new DataSet (tuples);
+        DistanceMatrix matrix = DistanceMatrix.onHeap (n, false).computeDistances (dataSet);
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                assertTrue (Utility.close (matrix.get (i, j), Tuple.deltaNorm (dataSet.get (i), dataSet.get (j))));
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_DynamicSpatiallyIndexed {
+    @Test
+    public void testDynamicSpatiallyIndexed () throws InterruptedException {
+        // a whole bunch of random 2D points in 3 clusters (each fairly well separated)
+        int n = 20000;
+        int initial = 1000;
+        Tuple[] tuples = ClusterFixture.makeTuples (n);
+
+        // start with some of the points, and add the rest while another thread searches
+        Tuple[] start = new Tuple[initial];
+        System.arraycopy (tuples, 0, start, 0, initial);
+        DynamicSpatiallyIndexed dataSet = new DynamicSpatiallyIndexed (start).setMergeThreshold (500);
+        Tuple locus = new Tuple (18.0, 25.0);
+        double range = 2.0;
+        AtomicBoolean adding = new AtomicBoolean (true);
+        AtomicInteger failures = new AtomicInteger ();
+        AtomicInteger searches = new AtomicInteger ();
+        Thread reader = new Thread (() -> {
+            int lastFound = 0;
+            do {
+                // every result is in range, and a result never shrinks because points are only added
+                int[] found = dataSet.rangeSearch (locus, range);
+                for (int i : found) {
+                    if (Tuple.deltaNorm (dataSet.get (i), locus) >= range) {
+                        failures.incrementAndGet ();
+                    }
+                }
+                if (found.length < lastFound) {
+                    failures.incrementAndGet ();
+                }
+                lastFound = found.length;
+                searches.incrementAndGet ();
+            } while (adding.get ());
+        });
+        reader.start ();
+        for (int i = initial; i < n; ++i) {
+            assertTrue (dataSet.add (tuples[i]) == i);
+        }
+        adding.set (false);
+        reader.join ();
+        assertTrue (failures.get () == 0);
+        assertTrue (searches.get () > 0);
+        assertTrue (dataSet.getN () == n);
+
+        // the ids are the order the points were added, before and after everything is indexed
+        DataSet exhaustive = new DataSet (tuples.clone ());
+        for (int pass = 0; pass < 2; ++pass) {
+            for (Tuple search : new Tuple[] {locus, new Tuple (70.0, 45.0), new Tuple (20.0, 70.0)}) {
+                int[] found = dataSet.rangeSearch (search, range);
+                assertTrue (found.length == exhaustive.rangeSearch (search, range).length);
+                for (int i : found) {
+                    assertTrue (dataSet.get (i) == tuples[i]);
+                }
+            }
+            dataSet.merge ();
+            assertTrue (dataSet.getDeltaSize () == 0);
+        }
+        for (Tuple tuple : tuples) {
+            assertTrue (Bound.contains (dataSet.getBounds (), tuple));
+        }
+    }
+
+    @Test
+    public void testWeights () {
+        Tuple[] tuples = ClusterFixture.makeTuples (3000);
+        DynamicSpatiallyIndexed dataSet = new DynamicSpatiallyIndexed (tuples[0], tuples[1]);
+        assertTrue (! dataSet.isWeighted ());
+
+        // the weights follow the ids, and added tuples count once unless they say otherwise
+        dataSet.setWeights (2, 3);
+        assertTrue (dataSet.add (tuples[2]) == 2);
+        assertTrue (dataSet.add (tuples[3], 5) == 3);
+        for (int i = 4; i < tuples.length; ++i) {
+            dataSet.add (tuples[i]);
+        }
+        dataSet.merge ();
+        assertTrue (dataSet.getWeight (0) == 2);
+        assertTrue (dataSet.getWeight (1) == 3);
+        assertTrue (dataSet.getWeight (2) == 1);
+        assertTrue (dataSet.getWeight (3) == 5);
+        assertTrue (dataSet.getWeight (tuples.length - 1) == 1);
+
+        // so a scan can count them all
+        DensityBasedScan densityBasedScan = new DensityBasedScan (dataSet, 2.0, 4);
+        assertTrue (densityBasedScan.getClusterCount () > 0);
+
+        // a weight on an unweighted set starts weighting it, and new contents drop the weights
+        DynamicSpatiallyIndexed unweighted = new DynamicSpatiallyIndexed (tuples[0]);
+        unweighted.add (tuples[1], 4);
+        assertTrue (unweighted.isWeighted () && (unweighted.getWeight (0) == 1) && (unweighted.getWeight (1) == 4));
+        unweighted.setTuples (tuples[2], tuples[3]);
+        assertTrue (! unweighted.isWeighted ());
+        assertTrue (unweighted.getN () == 2);
+    }
+}
@@ -0,0 +1,84 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_HierarchicalVectorQuantization {
+    private double meanErrorSq (DataSet dataSet, Tuple[] centroids, int[] labels) {
+        double errorSq = 0;
+        for (int i = 0; i < dataSet.getN (); ++i) {
+            errorSq += Tuple.deltaNormSq (dataSet.get (i), centroids[labels[i]]);
+        }
+        return errorSq / dataSet.getN ();
+    }
+
+    @Test
+    public void testHierarchicalVectorQuantization () {
+        // a whole bunch of random 2D points in 3 clusters (each fairly well separated)
+        int n = 10000;
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] tuples = ClusterFixture.makeTuples (ClusterFixture.THREE_BOXES, n, random, null);
+        DataSet dataSet = new DataSet (tuples);
+        VectorQuantization flat = new VectorQuantization (dataSet, 64);
+        double flatErrorSq = meanErrorSq (dataSet, flat.getCentroids (), flat.getLabels ());
+
+        for (int branching : new int[] {2, 3, 8}) {
+            // exactly the clusters asked for, none of them empty
+            HierarchicalVectorQuantization quantization = new HierarchicalVectorQuantization (dataSet).setSeed (random.nextLong ()).setClusterCount (64).setBranching (branching).fit ();
+            assertTrue (quantization.getClusterCount () == 64);
+            for (int i = 0; i < 64; ++i) {
+                assertTrue (quantization.getClusterSize (i) > 0);
+            }
+
+            // every sample walks down the tree to the cluster it was given
+            int[] labels = quantization.getLabels ();
+            for (int i = 0; i < n; ++i) {
+                assertTrue (quantization.assign (tuples[i]) == labels[i]);
+            }
+
+            // and the clusters are about as tight as a flat fit's
+            assertTrue (meanErrorSq (dataSet, quantization.getCentroids (), labels) < (flatErrorSq * 2));
+        }
+
+        // the 3 separated clusters come out of a bisection of 3
+        HierarchicalVectorQuantization three = new HierarchicalVectorQuantization (dataSet, 3, 2);
+        assertTrue (three.getClusterCount () == 3);
+    }
+
+    @Test
+    public void testSmallLeaves () {
+        // leaves with fewer members than the branching split into no more children than they have
+        // members, and asking for more clusters than samples stops at one sample per cluster
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] tuples = new Tuple[50];
+        for (int i = 0; i < tuples.length; ++i) {
+            tuples[i] = new Tuple (random.nextDouble (), random.nextDouble ());
+        }
+        DataSet dataSet = new DataSet (tuples);
+        HierarchicalVectorQuantization quantization = new HierarchicalVectorQuantization (dataSet).setSeed (random.nextLong ()).setClusterCount (40).setBranching (4).fit ();
+        assertTrue (quantization.getClusterCount () == 40);
+        int[] labels = quantization.getLabels ();
+        for (int i = 0; i < tuples.length; ++i) {
+            assertTrue (quantization.assign (tuples[i]) == labels[i]);
+        }
+
+        DataSet pair = new DataSet (new Tuple (0.0, 0.0), new Tuple (1.0, 1.0));
+        HierarchicalVectorQuantization two = new HierarchicalVectorQuantization (pair).setSeed (random.nextLong ()).setClusterCount (3).setBranching (3).fit ();
+        assertTrue (two.getClusterCount () == 2);
+        assertTrue (two.getLabels ()[0] != two.getLabels ()[1]);
+    }
+
+    @Test (timeout = 10000)
+    public void testAssignUnreachable () {
+        // a tuple with no finite distance to any centroid still reaches a leaf
+        Tuple[] tuples = ClusterFixture.makeTuples (200);
+        HierarchicalVectorQuantization quantization = new HierarchicalVectorQuantization (new DataSet (tuples)).setSeed (ClusterFixture.SEED).setClusterCount (8).fit ();
+        for (Tuple tuple : new Tuple[] {new Tuple (1.0e200, 1.0e200), new Tuple (Double.NaN, 0.0)}) {
+            int cluster = quantization.assign (tuple);
+            assertTrue ((cluster >= 0) && (cluster < 8));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_KdTree {
+    @Test
+    public void testNearest () {
+        // build a tree over a bunch of random 3D points
+        int n = 5000;
+        int k = 3;
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            tuples[i] = Tuple.scale (Tuple.random (k), 100.0);
+        }
+        DataSet dataSet = new DataSet (tuples);
+        KdTree kdTree = new KdTree (dataSet);
+        assertTrue (kdTree.getN () == n);
+
+        // and confirm the nearest point to random probes against an exhaustive search
+        for (int probe = 0; probe < 200; ++probe) {
+            Tuple locus = Tuple.scale (Tuple.random (k), 100.0);
+            double nearestNormSq = Double.MAX_VALUE;
+            for (Tuple tuple : tuples) {
+                nearestNormSq = Math.min (nearestNormSq, Tuple.deltaNormSq (tuple, locus));
+            }
+            int nearest = kdTree.nearest (locus);
+            assertTrue (Utility.close (Tuple.deltaNormSq (dataSet.get (nearest), locus), nearestNormSq));
+        }
+    }
+
+    @Test
+    public void testConcurrentNearest () {
+        // many threads searching one tree at once each get their own answer
+        Tuple[] tuples = ClusterFixture.makeTuples (5000);
+        DataSet dataSet = new DataSet (tuples);
+        KdTree kdTree = new KdTree (dataSet);
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] probes = ClusterFixture.makeTuples (ClusterFixture.THREE_BOXES, 2000, random, null);
+        AtomicInteger wrong = new AtomicInteger ();
+        IntStream.range (0, probes.length).parallel ().forEach (probe -> {
+            double nearestNormSq = Double.MAX_VALUE;
+            for (Tuple tuple : tuples) {
+                nearestNormSq = Math.min (nearestNormSq, Tuple.deltaNormSq (tuple, probes[probe]));
+            }
+            int nearest = kdTree.nearest (probes[probe]);
+            if (! Utility.close (Tuple.deltaNormSq (dataSet.get (nearest), probes[probe]), nearestNormSq)) {
+                wrong.incrementAndGet ();
+            }
+        });
+        assertTrue (wrong.get () == 0);
+    }
+}
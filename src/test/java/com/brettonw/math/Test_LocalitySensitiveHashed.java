@@ -0,0 +1,89 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_LocalitySensitiveHashed {
+    @Test
+    public void testLocalitySensitiveHashed () {
+        // generate a whole bunch of random 16D points in 3 gaussian clusters, far apart
+        int c = 3;
+        int k = 16;
+        int n = 6000;
+        Random random = new Random (ClusterFixture.SEED);
+        double[][] centers = new double[c][k];
+        for (int i = 0; i < c; ++i) {
+            for (int j = 0; j < k; ++j) {
+                centers[i][j] = random.nextDouble () * 100;
+            }
+        }
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            double[] values = new double[k];
+            int center = random.nextInt (c);
+            for (int j = 0; j < k; ++j) {
+                values[j] = centers[center][j] + random.nextGaussian ();
+            }
+            tuples[i] = new Tuple (values);
+        }
+        DataSet exact = new DataSet (tuples);
+        LocalitySensitiveHashed hashed = new LocalitySensitiveHashed (tuples, LocalitySensitiveHashed.METRIC_EUCLIDEAN, 16, 4, 8.0, random.nextLong ());
+
+        // a rebuild with a listener attached reports the hashing
+        int[] hashPhases = new int[1];
+        hashed.setListener (new ClusterListener () {
+            @Override
+            public void phase (Object source, String phase, long nanoseconds) {
+                hashPhases[0] += phase.equals ("hash") ? 1 : 0;
+            }
+        }).setTuples (tuples);
+        assertTrue (hashPhases[0] == 1);
+        hashed.setListener (null);
+
+        // every point found is really in range, and almost all of the points in range are found.
+        // searching fewer tables never finds more
+        double range = 3.0;
+        long exactFound = 0, hashedFound = 0;
+        for (int query = 0; query < 100; ++query) {
+            Tuple locus = tuples[random.nextInt (n)];
+            int[] found = hashed.setTablesSearched (16).rangeSearch (locus, range);
+            for (int i : found) {
+                assertTrue (Tuple.deltaNorm (tuples[i], locus) < range);
+            }
+            assertTrue (hashed.setTablesSearched (1).rangeSearch (locus, range).length <= found.length);
+            exactFound += exact.rangeSearch (locus, range).length;
+            hashedFound += found.length;
+        }
+        assertTrue (hashedFound >= (exactFound * 0.9));
+
+        // the exact nearest neighbors come back nearest first, and the approximate ones are never
+        // nearer than the exact ones in the same place
+        hashed.setTablesSearched (16);
+        Tuple locus = tuples[random.nextInt (n)];
+        int[] nearest = exact.nearest (locus, 10);
+        int[] approximate = hashed.nearest (locus, 10);
+        assertTrue (nearest.length == 10);
+        for (int i = 1; i < nearest.length; ++i) {
+            assertTrue (Tuple.deltaNormSq (tuples[nearest[i - 1]], locus) <= Tuple.deltaNormSq (tuples[nearest[i]], locus));
+        }
+        int nearer = 0;
+        for (Tuple tuple : tuples) {
+            if (Tuple.deltaNormSq (tuple, locus) < Tuple.deltaNormSq (tuples[nearest[9]], locus)) {
+                ++nearer;
+            }
+        }
+        assertTrue (nearer < 10);
+        for (int i = 0; i < approximate.length; ++i) {
+            assertTrue (Tuple.deltaNormSq (tuples[approximate[i]], locus) >= Tuple.deltaNormSq (tuples[nearest[i]], locus));
+        }
+
+        // angular hashing of the same points still only finds points in range
+        LocalitySensitiveHashed angular = new LocalitySensitiveHashed (tuples, LocalitySensitiveHashed.METRIC_ANGULAR, 8, 12, 0, random.nextLong ());
+        for (int i : angular.rangeSearch (locus, range)) {
+            assertTrue (Tuple.deltaNorm (tuples[i], locus) < range);
+        }
+    }
+}
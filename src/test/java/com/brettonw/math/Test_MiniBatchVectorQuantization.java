@@ -0,0 +1,36 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertTrue;
+
+public class Test_MiniBatchVectorQuantization {
+
+    @Test
+    public void testMiniBatchVq () {
+        // a whole bunch of random 2D points in 3 clusters (each fairly well separated)
+        int c = ClusterFixture.THREE_BOXES.length;
+        int n = 10000;
+        Tuple[] tuples = ClusterFixture.makeTuples (n);
+
+        // now create the solver, and test that every point landed in exactly one cluster
+        DataSet dataSet = new DataSet (tuples);
+        MiniBatchVectorQuantization vectorQuantization = new MiniBatchVectorQuantization (dataSet, c, 100, 50);
+        assertTrue (vectorQuantization.getClusterCount () == c);
+        assertTrue (vectorQuantization.getCentroids ().length == c);
+        int total = 0;
+        for (int i = 0; i < c; ++i) {
+            total += vectorQuantization.getCluster (i).length;
+        }
+        assertTrue (total == n);
+
+        // the same seed gives the same centroids
+        Tuple[] first = new MiniBatchVectorQuantization (dataSet).setClusterCount (c).setSeed (ClusterFixture.SEED).train ().getCentroids ();
+        Tuple[] second = new MiniBatchVectorQuantization (dataSet).setClusterCount (c).setSeed (ClusterFixture.SEED).train ().getCentroids ();
+        for (int i = 0; i < c; ++i) {
+            assertTrue (Arrays.equals (first[i].getValues (), second[i].getValues ()));
+        }
+    }
+}
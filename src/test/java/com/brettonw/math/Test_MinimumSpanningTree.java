@@ -0,0 +1,73 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_MinimumSpanningTree {
+    @Test
+    public void testSpanningTree () {
+        // random 2D points, including some exact duplicates
+        int n = 1000;
+        int k = 2;
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            tuples[i] = ((i % 10) == 9) ? tuples[i - 1] : Tuple.scale (Tuple.random (k), 100.0);
+        }
+        DataSet dataSet = new DataSet (tuples);
+        MinimumSpanningTree spanningTree = new MinimumSpanningTree (dataSet);
+        assertTrue (spanningTree.getEdgeCount () == n - 1);
+
+        // the edges come out sorted, and their total matches prim's algorithm on the full graph
+        double total = 0;
+        for (int i = 0, end = spanningTree.getEdgeCount (); i < end; ++i) {
+            total += spanningTree.getEdgeDistance (i);
+            if (i > 0) {
+                assertTrue (spanningTree.getEdgeDistance (i - 1) <= spanningTree.getEdgeDistance (i));
+            }
+        }
+
+        boolean[] inTree = new boolean[n];
+        double[] distance = new double[n];
+        Arrays.fill (distance, Double.MAX_VALUE);
+        distance[0] = 0;
+        double primTotal = 0;
+        for (int added = 0; added < n; ++added) {
+            int next = -1;
+            for (int i = 0; i < n; ++i) {
+                if ((! inTree[i]) && ((next < 0) || (distance[i] < distance[next]))) {
+                    next = i;
+                }
+            }
+            inTree[next] = true;
+            primTotal += distance[next];
+            for (int i = 0; i < n; ++i) {
+                if (! inTree[i]) {
+                    distance[i] = Math.min (distance[i], Tuple.deltaNorm (dataSet.get (next), dataSet.get (i)));
+                }
+            }
+        }
+        assertTrue (Math.abs (total - primTotal) < 1.0e-6);
+
+        // a NaN leaves a point that no edge can reach, which is refused instead of searched forever
+        tuples[n - 1] = new Tuple (Double.NaN, 50.0);
+        boolean refused = false;
+        try {
+            new MinimumSpanningTree (new DataSet (tuples));
+        } catch (IllegalArgumentException exception) {
+            refused = true;
+        }
+        assertTrue (refused);
+
+        // and so do finite points so far apart that their squared distance overflows
+        refused = false;
+        try {
+            new MinimumSpanningTree (new DataSet (new Tuple (-1.0e155, 0.0), new Tuple (1.0e155, 0.0), new Tuple (1.0e155, 1.0)));
+        } catch (IllegalArgumentException exception) {
+            refused = true;
+        }
+        assertTrue (refused);
+    }
+}
@@ -0,0 +1,87 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_ProductQuantization {
+    @Test
+    public void testProductQuantization () {
+        // generate a whole bunch of random 4D points in 3 clusters (each fairly well separated)
+        Bound[][] bounds = new Bound[][] {
+                new Bound[] {new Bound (10, 20), new Bound (10, 30), new Bound (0, 10), new Bound (40, 50)},
+                new Bound[] {new Bound (15, 25), new Bound (60, 80), new Bound (30, 40), new Bound (0, 10)},
+                new Bound[] {new Bound (65, 90), new Bound (40, 50), new Bound (70, 80), new Bound (20, 30)}
+        };
+        int k = bounds[0].length;
+        int n = 10000;
+        Random random = new Random (ClusterFixture.SEED);
+        Tuple[] tuples = ClusterFixture.makeTuples (bounds, n, random, null);
+        DataSet dataSet = new DataSet (tuples);
+
+        // two subspaces of 2 dimensions each, 64 centroids apiece
+        ProductQuantization quantization = new ProductQuantization (2, 64).setTrainingSize (5000).setSeed (ClusterFixture.SEED).fit (dataSet);
+        assertTrue (quantization.getN () == n);
+
+        // the same seed trains the same codebooks
+        ProductQuantization again = new ProductQuantization (2, 64).setTrainingSize (5000).setSeed (ClusterFixture.SEED).fit (dataSet);
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < 2; ++j) {
+                assertTrue (again.getCode (i, j) == quantization.getCode (i, j));
+            }
+        }
+
+        // the decoded points are close to the originals, and encoding a point again gives the
+        // same code it got in the fit
+        double errorSq = 0;
+        for (int i = 0; i < n; ++i) {
+            errorSq += Tuple.deltaNormSq (tuples[i], quantization.decode (i));
+            byte[] code = quantization.encode (tuples[i]);
+            for (int j = 0; j < 2; ++j) {
+                assertTrue ((code[j] & 0xff) == quantization.getCode (i, j));
+            }
+        }
+        assertTrue ((errorSq / n) < 4.0);
+
+        // the table lookups give exactly the distance to the decoded point
+        Tuple query = ClusterFixture.makeTuples (new Bound[][] {bounds[0]}, 1, random, null)[0];
+        double[] table = quantization.getLookupTable (query);
+        for (int i = 0; i < n; i += 97) {
+            assertTrue (Utility.close (quantization.distanceSq (table, i), Tuple.deltaNormSq (query, quantization.decode (i))));
+        }
+
+        // the nearest neighbors come back nearest first, and no sample is nearer than the last
+        int[] nearest = quantization.nearest (query, 20);
+        assertTrue (nearest.length == 20);
+        for (int i = 1; i < nearest.length; ++i) {
+            assertTrue (quantization.distanceSq (table, nearest[i - 1]) <= quantization.distanceSq (table, nearest[i]));
+        }
+        double farthestSq = quantization.distanceSq (table, nearest[nearest.length - 1]);
+        int nearer = 0;
+        for (int i = 0; i < n; ++i) {
+            if (quantization.distanceSq (table, i) < farthestSq) {
+                ++nearer;
+            }
+        }
+        assertTrue (nearer < 20);
+
+        // an approximate range search finds most of what an exact one does, over a lot of queries
+        // so one unlucky query doesn't decide it
+        double range = 4.0;
+        long exactFound = 0, recalled = 0;
+        for (int search = 0; search < 50; ++search) {
+            Tuple locus = tuples[random.nextInt (n)];
+            boolean[] found = new boolean[n];
+            for (int i : quantization.rangeSearch (locus, range)) {
+                found[i] = true;
+            }
+            for (int i : dataSet.rangeSearch (locus, range)) {
+                recalled += found[i] ? 1 : 0;
+                ++exactFound;
+            }
+        }
+        assertTrue (recalled >= (exactFound * 0.65));
+    }
+}
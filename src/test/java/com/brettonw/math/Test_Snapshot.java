@@ -0,0 +1,67 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_Snapshot {
+
+    @Test
+    public void testSnapshot () throws IOException {
+        Path path = Files.createTempFile ("snapshot", ".bin");
+        try {
+            // the spatial index comes back without sorting, and searches the same
+            SpatiallyIndexed dataSet = new SpatiallyIndexed (ClusterFixture.makeTuples (5000));
+            Snapshot.save (path, dataSet);
+            SpatiallyIndexed loaded = Snapshot.loadSpatiallyIndexed (path);
+            assertTrue (loaded.getN () == dataSet.getN ());
+            assertTrue (loaded.getK () == dataSet.getK ());
+            for (int i = 0; i < dataSet.getN (); ++i) {
+                assertTrue (Arrays.equals (loaded.get (i).getValues (), dataSet.get (i).getValues ()));
+            }
+            for (int i = 0; i < 100; ++i) {
+                Tuple locus = dataSet.get (i * 50);
+                assertTrue (Arrays.equals (loaded.rangeSearch (locus, 2.0), dataSet.rangeSearch (locus, 2.0)));
+            }
+
+            // centroids
+            MiniBatchVectorQuantization quantization = new MiniBatchVectorQuantization (dataSet, 3, 100, 50);
+            Snapshot.save (path, quantization.getCentroids ());
+            Tuple[] centroids = Snapshot.loadCentroids (path);
+            for (int i = 0; i < centroids.length; ++i) {
+                assertTrue (Arrays.equals (centroids[i].getValues (), quantization.getCentroids ()[i].getValues ()));
+            }
+
+            // density based scan labels
+            DensityBasedScan densityBasedScan = new DensityBasedScan (loaded, 2.0, 4);
+            Snapshot.save (path, densityBasedScan);
+            DensityBasedScan restored = new DensityBasedScan (loaded).setLabels (Snapshot.loadLabels (path));
+            assertTrue (restored.getClusterCount () == densityBasedScan.getClusterCount ());
+            assertTrue (Arrays.equals (restored.getLabels (), densityBasedScan.getLabels ()));
+
+            // dendrogram
+            DataSet small = new DataSet (ClusterFixture.makeTuples (300));
+            AgglomeratedHierarchy agglomeratedHierarchy = new AgglomeratedHierarchy (small, AgglomeratedHierarchy.USE_WARD_DISTANCE);
+            Snapshot.save (path, agglomeratedHierarchy.getDendrogram ());
+            AgglomeratedHierarchy restoredHierarchy = new AgglomeratedHierarchy (small).setDendrogram (Snapshot.loadDendrogram (path));
+            assertTrue (Arrays.equals (restoredHierarchy.getDendrogram ().toLinkage (), agglomeratedHierarchy.getDendrogram ().toLinkage ()));
+            assertTrue (Arrays.equals (restoredHierarchy.cutAtCount (3).getLabels (), agglomeratedHierarchy.cutAtCount (3).getLabels ()));
+
+            // the wrong kind of snapshot is refused
+            boolean refused = false;
+            try {
+                Snapshot.loadCentroids (path);
+            } catch (IOException exception) {
+                refused = true;
+            }
+            assertTrue (refused);
+        } finally {
+            Files.delete (path);
+        }
+    }
+}
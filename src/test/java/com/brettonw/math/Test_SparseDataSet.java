@@ -0,0 +1,112 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class Test_SparseDataSet {
+    @Test
+    public void testSparseDataSet () {
+        // sparse rows in 3 clusters, each cluster drawing its non-zeros from its own 30 columns
+        int c = 3;
+        int k = 5000;
+        int n = 600;
+        int perRow = 10;
+        Random random = new Random (ClusterFixture.SEED);
+        int[][] topics = new int[c][30];
+        for (int[] topic : topics) {
+            for (int j = 0; j < topic.length; ++j) {
+                topic[j] = random.nextInt (k);
+            }
+        }
+        int[] rowOffsets = new int[n + 1];
+        int[] columns = new int[n * perRow];
+        double[] values = new double[n * perRow];
+        int count = 0;
+        for (int i = 0; i < n; ++i) {
+            int[] topic = topics[random.nextInt (c)];
+            int[] picked = new int[perRow];
+            int distinct = 0;
+            while (distinct < perRow) {
+                int column = topic[random.nextInt (topic.length)];
+                boolean seen = false;
+                for (int j = 0; j < distinct; ++j) {
+                    seen |= picked[j] == column;
+                }
+                if (! seen) {
+                    picked[distinct++] = column;
+                }
+            }
+            Arrays.sort (picked);
+            for (int column : picked) {
+                columns[count] = column;
+                values[count++] = 1.0 + random.nextDouble ();
+            }
+            rowOffsets[i + 1] = count;
+        }
+        SparseDataSet sparse = new SparseDataSet (k, rowOffsets, columns, values);
+        assertTrue (sparse.getNonZeroCount () == n * perRow);
+
+        // the same rows, dense
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            tuples[i] = sparse.get (i);
+        }
+        DataSet dense = new DataSet (tuples);
+
+        // the kernels agree with the dense ones
+        for (int i = 1; i < n; ++i) {
+            assertTrue (Utility.close (sparse.getNormSq (i), Tuple.normSq (tuples[i])));
+            assertTrue (Utility.close (sparse.deltaNormSq (i - 1, i), Tuple.deltaNormSq (tuples[i - 1], tuples[i])));
+            assertTrue (Utility.close (sparse.dot (i, tuples[i - 1].getValues ()), Tuple.dot (tuples[i], tuples[i - 1])));
+        }
+
+        // and so do the searches
+        double range = 4.0;
+        for (int i = 0; i < n; i += 37) {
+            int[] expect = dense.rangeSearch (tuples[i], range);
+            assertTrue (Arrays.equals (sparse.rangeSearch (tuples[i], range), expect));
+            assertTrue (Arrays.equals (sparse.rangeSearch (i, range), expect));
+            assertTrue (sparse.nearest (tuples[i], 5)[0] == dense.nearest (tuples[i], 5)[0]);
+        }
+
+        // the bounds are padded the same way
+        for (int j = 0; j < k; ++j) {
+            assertTrue (sparse.getBounds ()[j].getMin () == dense.getBounds ()[j].getMin ());
+            assertTrue (sparse.getBounds ()[j].getMax () == dense.getBounds ()[j].getMax ());
+        }
+
+        // hashing the sparse rows puts them in the same buckets as the dense tuples, so the
+        // approximate searches find the same neighbors
+        long seed = random.nextLong ();
+        LocalitySensitiveHashed sparseHashed = new LocalitySensitiveHashed (sparse, LocalitySensitiveHashed.METRIC_EUCLIDEAN, 8, 4, 8.0, seed);
+        LocalitySensitiveHashed denseHashed = new LocalitySensitiveHashed (tuples, LocalitySensitiveHashed.METRIC_EUCLIDEAN, 8, 4, 8.0, seed);
+        int hashedCount = 0;
+        for (int i = 0; i < n; i += 37) {
+            int[] expect = denseHashed.rangeSearch (tuples[i], range);
+            assertTrue (Arrays.equals (sparseHashed.rangeSearch (tuples[i], range), expect));
+            assertTrue (Arrays.equals (sparseHashed.rangeSearch (i, range), expect));
+            assertTrue (sparseHashed.nearest (tuples[i], 1)[0] == i);
+            hashedCount += expect.length;
+        }
+        assertTrue (hashedCount > 0);
+        assertTrue (Utility.close (sparseHashed.deltaNormSq (0, 1), sparse.deltaNormSq (0, 1)));
+
+        // vector quantization from the same starting centroids lands in the same place
+        Tuple[] start = new Tuple[] {tuples[0], tuples[1], tuples[2]};
+        VectorQuantization sparseQuantization = new VectorQuantization (sparse).setCentroids (start.clone ()).fit ();
+        VectorQuantization denseQuantization = new VectorQuantization (dense).setCentroids (start.clone ()).fit ();
+        assertTrue (Arrays.equals (sparseQuantization.getLabels (), denseQuantization.getLabels ()));
+        for (int i = 0; i < c; ++i) {
+            assertTrue (Tuple.deltaNorm (sparseQuantization.getCentroids ()[i], denseQuantization.getCentroids ()[i]) < 1.0e-6);
+        }
+
+        // and so does DBSCAN
+        DensityBasedScan sparseScan = new DensityBasedScan (sparse, range, 3);
+        DensityBasedScan denseScan = new DensityBasedScan (dense, range, 3);
+        assertTrue (Arrays.equals (sparseScan.getLabels (), denseScan.getLabels ()));
+    }
+}
@@ -56,4 +56,49 @@ public class Test_SpatiallyIndexed {
         }
         assertTrue (exhaustiveMatchCount == rangeSearchResult.length);
     }
+
+    @Test
+    public void testParallelBuild () {
+        // enough points that the index is built in chunks
+        Bound[] bound = new Bound[] {new Bound (-50, 50), new Bound (0, 200)};
+        int n = 200000;
+        Tuple[] given = new Tuple[n];
+        for (int i = 0; i < n; ++i) {
+            given[i] = Bound.mapFromCanonical (bound, Tuple.random (2));
+        }
+        Tuple[] tuples = given.clone ();
+        SpatiallyIndexed dataSet = new SpatiallyIndexed (tuples);
+
+        // the bounds enclose everything
+        for (Tuple tuple : given) {
+            assertTrue (Bound.contains (dataSet.getBounds (), tuple));
+        }
+
+        // the permutation maps the sorted tuples back to where they were given
+        int[] permutation = dataSet.getPermutation ();
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; ++i) {
+            assertTrue (! seen[permutation[i]]);
+            seen[permutation[i]] = true;
+            assertTrue (dataSet.get (i) == given[permutation[i]]);
+            assertTrue (tuples[i] == dataSet.get (i));
+        }
+
+        // the tuples are in cell order, stable within a cell, and every cell of the index starts
+        // at its first tuple
+        for (int i = 1; i < n; ++i) {
+            int order = dataSet.compare (dataSet.get (i - 1), dataSet.get (i));
+            assertTrue ((order < 0) || ((order == 0) && (permutation[i - 1] < permutation[i])));
+        }
+        for (int i = 0; i < n; ++i) {
+            int cell = dataSet.indexOffsetFromGrid (dataSet.mapToGrid (dataSet.get (i)));
+            assertTrue ((dataSet.index[cell] <= i) && ((cell + 1 == dataSet.index.length) || (i < dataSet.index[cell + 1])));
+        }
+
+        // and range searches find exactly what an exhaustive search does
+        DataSet exhaustive = new DataSet (given);
+        for (Tuple locus : new Tuple[] {new Tuple (0.0, 100.0), new Tuple (-49.0, 1.0), new Tuple (25.0, 150.0)}) {
+            assertTrue (dataSet.rangeSearch (locus, 3.0).length == exhaustive.rangeSearch (locus, 3.0).length);
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package com.brettonw.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertTrue;
+
+public class Test_StreamingVectorQuantization {
+
+    @Test
+    public void testStreamingVq () {
+        // a whole bunch of random 2D points in 3 clusters (each fairly well separated)
+        int c = ClusterFixture.THREE_BOXES.length;
+        int k = ClusterFixture.THREE_BOXES[0].length;
+        int n = 10000;
+        Tuple[] tuples = ClusterFixture.makeTuples (n);
+
+        // feed the points through the engine as a stream, every point is counted exactly once
+        StreamingVectorQuantization streaming = new StreamingVectorQuantization (c, k);
+        assertTrue (! streaming.isSeeded ());
+        streaming.add (Arrays.asList (tuples).iterator ());
+        assertTrue (streaming.isSeeded ());
+        assertTrue (streaming.getCentroids ().length == c);
+        long total = 0;
+        for (long count : streaming.getCounts ()) {
+            total += count;
+        }
+        assertTrue (total == n);
+
+        // every centroid is a running mean of points, so it must lie inside the data bounds
+        DataSet dataSet = new DataSet (tuples);
+        for (Tuple centroid : streaming.getCentroids ()) {
+            assertTrue (Bound.contains (dataSet.getBounds (), centroid));
+        }
+    }
+}
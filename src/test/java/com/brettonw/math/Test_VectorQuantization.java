@@ -45,6 +45,13 @@ public class Test_VectorQuantization {
         VectorQuantization vectorQuantization = new VectorQuantization (dataSet, c);
         assertTrue (vectorQuantization.getClusterCount () == c);
 
+        // a refit on the same data starts from the converged centroids, so it should not move them
+        Tuple[] centroids = vectorQuantization.getCentroids ();
+        vectorQuantization.fit ();
+        for (int i = 0; i < c; ++i) {
+            assertTrue (Utility.close (Tuple.deltaNorm (centroids[i], vectorQuantization.getCentroids ()[i]), 0));
+        }
+
         BagArray clustersBagArray = vectorQuantization.export ();
         File outputFile = new File ("target", "vq.json");
         try (BufferedWriter writer = new BufferedWriter (new FileWriter (outputFile))) {